@@ -0,0 +1,163 @@
+package com.example.nowplaying;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The listening history with {@value #PLAYS} synthetic plays this week: {@code ingest} appends them all to an
+ * empty log (flushing in batches, as the write-behind does) and reports the cost per play; {@code reopen} is a
+ * server start replaying the week; {@code recent} and {@code topArtists} are the {@code /np} queries against the
+ * populated log. Artists and titles are skewed, so a few are played far more than the rest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+    private static final int PLAYS = 2_000_000;
+    private static final int FLUSH_EVERY = 10_000;
+
+    @Param({"2000"})
+    int players;
+
+    @Param({"5000"})
+    int artists;
+
+    @Param({"50000"})
+    int titles;
+
+    UUID[] ids;
+    String[] artistNames;
+    String[] titleNames;
+    int[] playPlayer;
+    int[] playArtist;
+    int[] playTitle;
+    long[] playedAt;
+    Path populated;
+    Path scratch;
+    HistoryLog log;
+    int next;
+
+    @Setup(Level.Trial)
+    public void populate() throws IOException {
+        ids = new UUID[players];
+        for (int i = 0; i < players; i++) ids[i] = UUID.randomUUID();
+        artistNames = new String[artists];
+        for (int i = 0; i < artists; i++) artistNames[i] = "Artist " + i;
+        titleNames = new String[titles];
+        for (int i = 0; i < titles; i++) titleNames[i] = "Track title number " + i;
+        SplittableRandom random = new SplittableRandom(42);
+        playPlayer = new int[PLAYS];
+        playArtist = new int[PLAYS];
+        playTitle = new int[PLAYS];
+        playedAt = new long[PLAYS];
+        // Spread over this week so far, in order, so every play counts towards the weekly top
+        long week = HistoryLog.weekStart(System.currentTimeMillis());
+        long span = Math.max(PLAYS, System.currentTimeMillis() - week);
+        for (int i = 0; i < PLAYS; i++) {
+            playPlayer[i] = random.nextInt(players);
+            playArtist[i] = skewed(random, artists);
+            playTitle[i] = skewed(random, titles);
+            playedAt[i] = week + span * i / PLAYS;
+        }
+        populated = Files.createTempDirectory("nowplaying-history-bench");
+        log = new HistoryLog(populated);
+        ingest(log);
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePopulated() throws IOException {
+        delete(populated);
+    }
+
+    @Setup(Level.Iteration)
+    public void freshDirectory() throws IOException {
+        scratch = Files.createTempDirectory("nowplaying-history-bench");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteScratch() throws IOException {
+        delete(scratch);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OperationsPerInvocation(PLAYS)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void ingest() throws IOException {
+        try (HistoryLog l = new HistoryLog(scratch)) {
+            ingest(l);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public HistoryLog reopen() throws IOException {
+        return new HistoryLog(populated);
+    }
+
+    @Benchmark
+    public List<ListeningHistory.Play> recent() {
+        return log.recent(ids[next++ % players], 10);
+    }
+
+    @Benchmark
+    public List<ListeningHistory.ArtistCount> topArtistsPlayer() {
+        return log.topArtists(ids[next++ % players], 5);
+    }
+
+    @Benchmark
+    public List<ListeningHistory.ArtistCount> topArtistsServer() {
+        return log.topArtists(null, 5);
+    }
+
+    private void ingest(HistoryLog l) throws IOException {
+        for (int i = 0; i < PLAYS; i++) {
+            l.append(playedAt[i], ids[playPlayer[i]], artistNames[playArtist[i]], titleNames[playTitle[i]]);
+            if (i % FLUSH_EVERY == FLUSH_EVERY - 1) l.flush();
+        }
+        l.flush();
+    }
+
+    // Low indices far more often than high ones, like real listening
+    private static int skewed(SplittableRandom random, int n) {
+        double u = random.nextDouble();
+        return (int) (u * u * u * n);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.nowplaying;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips against a running {@link NowPlayingHttpServer} on loopback, sampled so the report includes
+ * p99/p99.9. It runs 256 client threads, the few hundred concurrent local clients the executors are meant for;
+ * {@code -t 16} shows the same at light load. {@code single} is the one-thread executor of older versions, as a baseline.
+ * {@code postPerEvent} and {@code postBatch} deliver the same eight updates, one request each versus a single
+ * {@code /nowplaying/batch} request, and are reported per update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(256)
+public class HttpRoundTripBenchmark {
+    private static final int EVENTS = 8;
+    private static final String PLAYER = "069a79f4-44e9-4726-a5be-fca90e38aaf5";
+
+    // One server per JVM, and each parameter combination gets its own fork
+    @Param({"virtual", "pool", "single"})
+    String executor;
+
+    @Param({"18765"})
+    int port;
+
+    HttpClient client;
+    HttpRequest get;
+    HttpRequest conditionalGet;
+    HttpRequest[] posts;
+    HttpRequest batch;
+
+    @Setup
+    public void start() throws IOException, InterruptedException {
+        NowPlayingConfig cfg = new NowPlayingConfig();
+        cfg.setHttpExecutor(executor);
+        NowPlayingHttpServer.startIfNotRunning(port, cfg);
+        client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+
+        String base = "http://127.0.0.1:" + port;
+        posts = new HttpRequest[EVENTS];
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < EVENTS; i++) {
+            // Same track from one source, so every update is accepted and none changes the state
+            String event = "{\"title\":\"Hoppípolla\",\"artist\":\"Sigur Rós\",\"source\":\"YouTube Music\","
+                + "\"player\":\"" + PLAYER + "\",\"playing\":\"true\"}";
+            posts[i] = post(base + "/nowplaying", event);
+            body.append(i == 0 ? "" : ",").append(event);
+        }
+        batch = post(base + "/nowplaying/batch", body.append(']').toString());
+
+        send(posts[0]);
+        get = HttpRequest.newBuilder(URI.create(base + "/nowplaying?player=" + PLAYER)).GET().build();
+        String etag = send(get).headers().firstValue("ETag").orElseThrow();
+        conditionalGet = HttpRequest.newBuilder(get.uri()).header("If-None-Match", etag).GET().build();
+    }
+
+    @Benchmark
+    public int get() throws IOException, InterruptedException {
+        return send(get).statusCode();
+    }
+
+    @Benchmark
+    public int getNotModified() throws IOException, InterruptedException {
+        return send(conditionalGet).statusCode();
+    }
+
+    @Benchmark
+    public int post() throws IOException, InterruptedException {
+        return send(posts[0]).statusCode();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int postPerEvent() throws IOException, InterruptedException {
+        int status = 0;
+        for (HttpRequest p : posts) status |= send(p).statusCode();
+        return status;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int postBatch() throws IOException, InterruptedException {
+        return send(batch).statusCode();
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static HttpRequest post(String uri, String json) {
+        return HttpRequest.newBuilder(URI.create(uri))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+    }
+}
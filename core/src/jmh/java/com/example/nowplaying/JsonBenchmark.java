@@ -0,0 +1,177 @@
+package com.example.nowplaying;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The JSON paths: POST bodies of the local server, the Last.fm responses the poller and the metadata cache read,
+ * and the GET body encoding. The {@code legacy*} benchmarks run the split/indexOf parsers this package used before
+ * the streaming {@link JsonReader}, on the same bytes, as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    byte[] postBody;
+    byte[] batchBody;
+    byte[] recentTracks;
+    byte[] trackInfo;
+    NowPlayingService.Snapshot snapshot;
+
+    @Setup
+    public void setup() throws IOException {
+        postBody = ("{\"title\":\"Hello, World (Remastered \\\"2024\\\")\",\"artist\":\"Sigur Rós: Live\","
+            + "\"source\":\"YouTube Music\",\"player\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\"}")
+            .getBytes(StandardCharsets.UTF_8);
+        String item = new String(postBody, StandardCharsets.UTF_8);
+        batchBody = ("[" + String.join(",", java.util.Collections.nCopies(8, item)) + "]").getBytes(StandardCharsets.UTF_8);
+        recentTracks = resource("/recenttracks.json");
+        trackInfo = resource("/trackinfo.json");
+        snapshot = new NowPlayingService.Snapshot("Hello, World (Remastered \"2024\")", "Sigur Rós: Live", "YouTube Music",
+            Instant.now(), 42L, new TrackMetadata("Ágætis byrjun", 604_000L, "https://example.invalid/300x300.jpg", 3_100_210L));
+    }
+
+    @Benchmark
+    public Map<String, String> postBody() throws IOException {
+        return NowPlayingHttpServer.Json.parseFlatStringMap(new ByteArrayInputStream(postBody));
+    }
+
+    @Benchmark
+    public Map<String, String> legacyPostBody() {
+        // The old handler read the whole body into a String first
+        return Legacy.parseFlatStringMap(new String(postBody, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public List<Map<String, String>> batchBody() throws IOException {
+        return NowPlayingHttpServer.Json.parseFlatStringMaps(new ByteArrayInputStream(batchBody), 64);
+    }
+
+    @Benchmark
+    public LastFmClient.RecentTrack recentTracks() throws IOException {
+        return LastFmClient.parseFirstTrack(new JsonReader(new ByteArrayInputStream(recentTracks)));
+    }
+
+    @Benchmark
+    public Object legacyRecentTracks() {
+        return Legacy.parseFirstTrack(new String(recentTracks, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public TrackMetadata trackInfo() throws IOException {
+        return LastFmClient.parseTrackInfo(new JsonReader(new ByteArrayInputStream(trackInfo)));
+    }
+
+    @Benchmark
+    public byte[] encodeSnapshot() {
+        return NowPlayingHttpServer.toJson(snapshot).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = JsonBenchmark.class.getResourceAsStream(name)) {
+            if (in == null) throw new IOException("Missing benchmark resource " + name);
+            return in.readAllBytes();
+        }
+    }
+
+    /** The parsers as they were before the streaming reader, kept only as a baseline. */
+    static final class Legacy {
+        private Legacy() {}
+
+        static Map<String, String> parseFlatStringMap(String json) {
+            if (json == null) return Map.of();
+            String trimmed = json.trim();
+            if (trimmed.isEmpty() || trimmed.equals("{}")) return Map.of();
+            if (trimmed.charAt(0) != '{' || trimmed.charAt(trimmed.length() - 1) != '}') return Map.of();
+            String inner = trimmed.substring(1, trimmed.length() - 1);
+            if (inner.isEmpty()) return Map.of();
+            return java.util.Arrays.stream(inner.split(","))
+                .map(String::trim)
+                .map(pair -> pair.split(":", 2))
+                .filter(arr -> arr.length == 2)
+                .collect(Collectors.toMap(
+                    arr -> unquote(arr[0].trim()),
+                    arr -> unquote(arr[1].trim()),
+                    (a, b) -> b
+                ));
+        }
+
+        static String unquote(String s) {
+            if (s.startsWith("\"") && s.endsWith("\"")) {
+                return s.substring(1, s.length() - 1).replace("\\\"", "\"");
+            }
+            return s;
+        }
+
+        static LastFmClient.RecentTrack parseFirstTrack(String json) {
+            if (json == null || json.isEmpty()) return null;
+            int trackIdx = json.indexOf("\"track\":");
+            if (trackIdx < 0) return null;
+            int firstObj = json.indexOf('{', trackIdx);
+            if (firstObj < 0) return null;
+            int windowEnd = Math.min(json.length(), firstObj + 2000);
+            String chunk = json.substring(firstObj, windowEnd);
+            String title = extractValue(chunk, "\"name\":\"");
+            String artist = extractNestedArtist(chunk);
+            boolean nowPlaying = chunk.contains("\"nowplaying\":\"true\"");
+            if (title == null) title = "";
+            if (artist == null) artist = "";
+            if (title.isBlank() && artist.isBlank()) return null;
+            return new LastFmClient.RecentTrack(title, artist, nowPlaying, 0L);
+        }
+
+        private static String extractNestedArtist(String json) {
+            int artistIdx = json.indexOf("\"artist\":");
+            if (artistIdx < 0) return null;
+            int textIdx = json.indexOf("\"#text\":\"", artistIdx);
+            if (textIdx < 0) return null;
+            return readJsonString(json, textIdx + "\"#text\":\"".length());
+        }
+
+        private static String extractValue(String json, String keyPattern) {
+            int idx = json.indexOf(keyPattern);
+            if (idx < 0) return null;
+            return readJsonString(json, idx + keyPattern.length());
+        }
+
+        private static String readJsonString(String json, int start) {
+            StringBuilder sb = new StringBuilder();
+            boolean escape = false;
+            for (int i = start; i < json.length(); i++) {
+                char c = json.charAt(i);
+                if (escape) {
+                    sb.append(c);
+                    escape = false;
+                } else if (c == '\\') {
+                    escape = true;
+                } else if (c == '"') {
+                    break;
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
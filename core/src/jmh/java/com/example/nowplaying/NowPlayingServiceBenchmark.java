@@ -0,0 +1,91 @@
+package com.example.nowplaying;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NowPlayingService} updates and reads under contention: repeated polls of the same track (the common case),
+ * real track changes, formatted reads, and a mixed group of one writer against several readers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NowPlayingServiceBenchmark {
+    private static final String[] TITLES = {"Hello, World", "Svefn-g-englar", "Hoppípolla", "Glósóli"};
+
+    @Param({"1", "1024"})
+    int players;
+
+    UUID[] keys;
+
+    @Setup
+    public void setup() {
+        keys = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            keys[i] = new UUID(0x6e6f77L, i + 1L);
+            NowPlayingService.update(keys[i], TITLES[0], "Sigur Rós", "Last.fm");
+        }
+    }
+
+    /** Per-thread position, so threads walk the keys independently. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int next(int bound) {
+            int i = next++;
+            return bound == 1 ? 0 : Math.floorMod(i, bound);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void updateSameTrack(Cursor cursor) {
+        NowPlayingService.update(keys[cursor.next(players)], TITLES[0], "Sigur Rós", "Last.fm");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void updateNewTrack(Cursor cursor) {
+        int i = cursor.next(players);
+        NowPlayingService.update(keys[i], TITLES[(cursor.next >>> 4) & 3], "Sigur Rós", "Last.fm");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getFormatted(Cursor cursor) {
+        return NowPlayingService.getFormattedNowPlaying(keys[cursor.next(players)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWriter(Cursor cursor) {
+        NowPlayingService.update(keys[cursor.next(players)], TITLES[cursor.next & 3], "Sigur Rós", "YouTube Music");
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public String mixedReader(Cursor cursor) {
+        return NowPlayingService.getFormattedNowPlaying(keys[cursor.next(players)]);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.nowplaying;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Saving and loading a large player population with each {@link PlayerSettingsBackend}: one properties file per
+ * player against the single append-only log. Saves go in flush-sized batches, the way {@link PlayerConfigStore}
+ * writes them; loads open a fresh backend (so the log rebuilds its index) and read every player back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PlayerStoreBenchmark {
+    private static final int BATCH = 512;
+
+    @Param({"files", "log"})
+    String backend;
+
+    @Param({"50000"})
+    int players;
+
+    UUID[] ids;
+    PlayerSettings settings;
+    Path populated;
+    Path scratch;
+
+    @Setup(Level.Trial)
+    public void populate() throws IOException {
+        ids = new UUID[players];
+        for (int i = 0; i < players; i++) ids[i] = UUID.randomUUID();
+        settings = PlayerSettings.EMPTY.with("lastfm_username", "benchmark_user");
+        populated = Files.createTempDirectory("nowplaying-store-bench");
+        try (PlayerSettingsBackend b = open(populated)) {
+            save(b);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void freshDirectory() throws IOException {
+        scratch = Files.createTempDirectory("nowplaying-store-bench");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteScratch() throws IOException {
+        delete(scratch);
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePopulated() throws IOException {
+        delete(populated);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        try (PlayerSettingsBackend b = open(scratch)) {
+            save(b);
+        }
+    }
+
+    @Benchmark
+    public void load(Blackhole bh) throws IOException {
+        try (PlayerSettingsBackend b = open(populated)) {
+            for (UUID id : ids) bh.consume(b.read(id));
+        }
+    }
+
+    private void save(PlayerSettingsBackend b) throws IOException {
+        Map<UUID, PlayerSettings> batch = new HashMap<>();
+        for (UUID id : ids) {
+            batch.put(id, settings);
+            if (batch.size() == BATCH) {
+                b.write(batch);
+                batch.clear();
+            }
+        }
+        b.write(batch);
+    }
+
+    private PlayerSettingsBackend open(Path dir) throws IOException {
+        return "log".equals(backend) ? new LogFileBackend(dir.resolve("players.log")) : new PropertiesFileBackend(dir);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.nowplaying;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Poll timers under churn: {@value #TIMERS_DEFAULT} pending per-user timers on the poller's {@link TimingWheel}
+ * against the {@link ScheduledThreadPoolExecutor} (remove-on-cancel) it replaced. {@code churn} cancels a random
+ * timer and schedules its replacement with a new adaptive delay, which is what every poll, join and leave does;
+ * {@code churnContended} does the same from four threads at once; {@code populate} schedules a whole population and
+ * cancels it again. Delays of 2 to 300 s keep timers from firing, so only the bookkeeping is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PollTimerBenchmark {
+    private static final String TIMERS_DEFAULT = "10000";
+    private static final Runnable NOOP = () -> {};
+
+    @Param({"wheel", "executor"})
+    String scheduler;
+
+    @Param({TIMERS_DEFAULT})
+    int timers;
+
+    Timers impl;
+    AtomicReferenceArray<Object> handles;
+
+    @Setup(Level.Trial)
+    public void start() {
+        impl = "wheel".equals(scheduler) ? new WheelTimers() : new ExecutorTimers();
+        handles = new AtomicReferenceArray<>(timers);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < timers; i++) handles.set(i, impl.schedule(delay(random.nextLong(1L << 20))));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        impl.close();
+    }
+
+    @Benchmark
+    public Object churn() {
+        return replaceOne();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object churnContended() {
+        return replaceOne();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10_000)
+    public void populate() {
+        Object[] batch = new Object[10_000];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < batch.length; i++) batch[i] = impl.schedule(delay(random.nextLong()));
+        for (Object handle : batch) impl.cancel(handle);
+    }
+
+    private Object replaceOne() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Object next = impl.schedule(delay(random.nextLong()));
+        Object previous = handles.getAndSet(random.nextInt(timers), next);
+        impl.cancel(previous);
+        return next;
+    }
+
+    // 2 s to 300 s: from the boosted poll period up to the longest backoff
+    private static long delay(long seed) {
+        return 2_000L + Math.floorMod(seed, 298_000L);
+    }
+
+    private interface Timers {
+        Object schedule(long delayMillis);
+
+        void cancel(Object handle);
+
+        void close();
+    }
+
+    private static final class WheelTimers implements Timers {
+        private final ExecutorService pool = Executors.newFixedThreadPool(4);
+        private final TimingWheel wheel = new TimingWheel(50L, 256, pool, "bench-timer");
+
+        @Override
+        public Object schedule(long delayMillis) {
+            return wheel.schedule(NOOP, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void cancel(Object handle) {
+            ((TimingWheel.Timeout) handle).cancel();
+        }
+
+        @Override
+        public void close() {
+            wheel.close();
+            pool.shutdownNow();
+        }
+    }
+
+    // The poller's previous setup
+    private static final class ExecutorTimers implements Timers {
+        private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(4);
+
+        ExecutorTimers() {
+            executor.setRemoveOnCancelPolicy(true);
+        }
+
+        @Override
+        public Object schedule(long delayMillis) {
+            return executor.schedule(NOOP, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void cancel(Object handle) {
+            ((ScheduledFuture<?>) handle).cancel(false);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+}
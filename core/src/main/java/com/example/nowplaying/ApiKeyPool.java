@@ -0,0 +1,228 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Last.fm API keys requests go out with, each with its own {@link TokenBucket}. Shared keys
+ * ({@code lastfm_api_key} plus {@code lastfm_extra_api_keys}) serve everyone: every request takes a token from
+ * the shared key with the most budget left, so load spreads evenly and adding a key adds its whole rate limit.
+ * A player's own key serves only that player's polls, which takes them off the shared budget.
+ * <p>
+ * Keys Last.fm calls invalid or suspended are quarantined for an hour, and rate-limited ones for a minute;
+ * quarantined keys are passed over while any other key can serve. Requests are counted per key for the metrics.
+ */
+final class ApiKeyPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final int BURST = 10;
+    static final long RATE_LIMIT_QUARANTINE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    static final long INVALID_KEY_QUARANTINE_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final Map<String, Key> keys = new ConcurrentHashMap<>();
+    // Copy-on-write; the primary key (the one lastfm_api_secret belongs to) comes first
+    private volatile List<Key> shared = List.of();
+    private volatile String primary;
+    private List<String> extra = List.of();
+    private volatile double permitsPerSecond;
+
+    ApiKeyPool(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    /** Comma- or whitespace-separated keys, blanks and duplicates dropped. */
+    static List<String> parse(String keys) {
+        Set<String> parsed = new LinkedHashSet<>();
+        for (String k : keys.split("[,\\s]+")) {
+            if (!k.isBlank()) parsed.add(k.trim());
+        }
+        return List.copyOf(parsed);
+    }
+
+    /** Last four characters, enough to tell keys apart in logs and metrics without giving them away. */
+    static String mask(String apiKey) {
+        return "..." + apiKey.substring(Math.max(0, apiKey.length() - 4));
+    }
+
+    synchronized void setPrimary(String apiKey) {
+        primary = apiKey == null || apiKey.isBlank() ? null : apiKey.trim();
+        rebuild();
+    }
+
+    synchronized void setExtra(List<String> apiKeys) {
+        extra = List.copyOf(apiKeys);
+        rebuild();
+    }
+
+    /** Changes the budget of every key; the buckets start over full. */
+    synchronized void setPermitsPerSecond(double permitsPerSecond) {
+        if (this.permitsPerSecond == permitsPerSecond) return;
+        this.permitsPerSecond = permitsPerSecond;
+        keys.values().forEach(k -> k.bucket = new TokenBucket(permitsPerSecond, BURST));
+    }
+
+    double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /** The key scrobbles are signed for, or null if none is set. */
+    String primary() {
+        return primary;
+    }
+
+    int sharedCount() {
+        return shared.size();
+    }
+
+    /** Takes one request from the shared key with the most budget left. */
+    Permit acquire() {
+        List<Key> candidates = shared;
+        if (candidates.isEmpty()) return Permit.NO_KEY;
+        long now = System.nanoTime();
+        Key best = null;
+        double bestTokens = -1d;
+        for (Key k : candidates) {
+            if (k.quarantined(now)) continue;
+            double tokens = k.bucket.available();
+            if (tokens > bestTokens) {
+                best = k;
+                bestTokens = tokens;
+            }
+        }
+        if (best == null) {
+            // Every key is quarantined: wait for the first one to come back
+            Key first = candidates.get(0);
+            for (Key k : candidates) {
+                if (k.quarantinedUntil - first.quarantinedUntil < 0) first = k;
+            }
+            return new Permit(first.apiKey, Math.max(1L, first.quarantinedUntil - now));
+        }
+        long waitNanos = best.take();
+        if (waitNanos == 0) return new Permit(best.apiKey, 0L);
+        // Another thread drained the fullest key in the meantime; try the rest before waiting
+        Key soonest = best;
+        for (Key k : candidates) {
+            if (k == best || k.quarantined(now)) continue;
+            long wait = k.take();
+            if (wait == 0) return new Permit(k.apiKey, 0L);
+            if (wait < waitNanos) {
+                waitNanos = wait;
+                soonest = k;
+            }
+        }
+        return new Permit(soonest.apiKey, waitNanos);
+    }
+
+    /** Takes one request from {@code apiKey} itself, e.g. a player's own key or the primary key for scrobbles. */
+    Permit acquire(String apiKey) {
+        Key k = key(apiKey);
+        long now = System.nanoTime();
+        if (k.quarantined(now)) return new Permit(apiKey, k.quarantinedUntil - now);
+        return new Permit(apiKey, k.take());
+    }
+
+    /** Whether {@code apiKey} is usable right now, i.e. not quarantined. */
+    boolean isAvailable(String apiKey) {
+        Key k = keys.get(apiKey);
+        return k == null || !k.quarantined(System.nanoTime());
+    }
+
+    /** Quarantines {@code apiKey} if {@code error} says it is invalid, suspended or over its rate limit. */
+    void failed(String apiKey, Throwable error) {
+        if (apiKey == null || !(error instanceof LastFmException e)) return;
+        Key k = key(apiKey);
+        if (e.isRateLimited()) {
+            k.bucket.pause(Duration.ofNanos(RATE_LIMIT_QUARANTINE_NANOS));
+            k.quarantine(RATE_LIMIT_QUARANTINE_NANOS);
+            k.rateLimited.increment();
+        } else if (e.getErrorCode() == LastFmException.INVALID_API_KEY
+                || e.getErrorCode() == LastFmException.SUSPENDED_API_KEY) {
+            if (k.quarantine(INVALID_KEY_QUARANTINE_NANOS)) {
+                LOGGER.warn("Last.fm API key {} was rejected ({}); not using it for an hour", mask(apiKey), e.getMessage());
+            }
+        }
+    }
+
+    /** Usage of the shared keys, then of the players' own keys that were used in the last minute. */
+    List<LastFmPoller.KeyUsage> usage() {
+        List<LastFmPoller.KeyUsage> usage = new ArrayList<>();
+        List<Key> sharedKeys = shared;
+        long now = System.nanoTime();
+        for (Key k : sharedKeys) usage.add(k.usage(true, now));
+        for (Key k : keys.values()) {
+            if (!sharedKeys.contains(k) && k.rate.perSecond() > 0) usage.add(k.usage(false, now));
+        }
+        return usage;
+    }
+
+    private void rebuild() {
+        Set<String> apiKeys = new LinkedHashSet<>();
+        if (primary != null) apiKeys.add(primary);
+        apiKeys.addAll(extra);
+        List<Key> next = new ArrayList<>(apiKeys.size());
+        for (String apiKey : apiKeys) next.add(key(apiKey));
+        shared = List.copyOf(next);
+    }
+
+    private Key key(String apiKey) {
+        return keys.computeIfAbsent(apiKey, k -> new Key(k, new TokenBucket(permitsPerSecond, BURST)));
+    }
+
+    /** A token taken from {@code apiKey}, or, if {@code waitNanos} is positive, how long until one is due. */
+    record Permit(String apiKey, long waitNanos) {
+        static final Permit NO_KEY = new Permit(null, 0L);
+
+        boolean granted() {
+            return apiKey != null && waitNanos == 0;
+        }
+    }
+
+    private static final class Key {
+        final String apiKey;
+        final LongAdder requests = new LongAdder();
+        final LongAdder rateLimited = new LongAdder();
+        final RateMeter rate = new RateMeter();
+        volatile TokenBucket bucket;
+        volatile long quarantinedUntil = System.nanoTime();
+
+        Key(String apiKey, TokenBucket bucket) {
+            this.apiKey = apiKey;
+            this.bucket = bucket;
+        }
+
+        long take() {
+            long waitNanos = bucket.tryAcquire();
+            if (waitNanos == 0) {
+                requests.increment();
+                rate.record();
+            }
+            return waitNanos;
+        }
+
+        boolean quarantined(long now) {
+            return now - quarantinedUntil < 0;
+        }
+
+        // True if the key was usable until now
+        synchronized boolean quarantine(long nanos) {
+            long now = System.nanoTime();
+            boolean wasUsable = !quarantined(now);
+            if (now + nanos - quarantinedUntil > 0) quarantinedUntil = now + nanos;
+            return wasUsable;
+        }
+
+        LastFmPoller.KeyUsage usage(boolean shared, long now) {
+            long left = quarantined(now) ? TimeUnit.NANOSECONDS.toMillis(quarantinedUntil - now) : 0L;
+            return new LastFmPoller.KeyUsage(mask(apiKey), shared, requests.sum(), rate.perSecond(), rateLimited.sum(), left);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.nowplaying;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Track changes waiting to be announced in server chat, for players who opted in
+ * ({@link PlayerConfigStore#isBroadcastEnabled}). Changes are coalesced per player, so only the latest track is
+ * ever pending, and {@link #drain()} releases them under two limits: a minimum interval between announcements of
+ * the same player and a global messages-per-minute budget. Anything held back stays pending (still coalescing)
+ * for a later drain. The game side drains once per tick, off the server thread, and only sends on it.
+ */
+public final class BroadcastQueue {
+    // Oldest first, so a player held back by the global budget is not overtaken forever; guarded by the class lock
+    private static final LinkedHashMap<UUID, NowPlayingService.Snapshot> PENDING = new LinkedHashMap<>();
+    // Players announced within the last interval; guarded by the class lock
+    private static final Map<UUID, Long> LAST_SENT = new HashMap<>();
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static volatile boolean hasPending;
+    private static volatile long playerIntervalNanos = 60_000_000_000L;
+    private static volatile TokenBucket global = bucket(20);
+
+    private BroadcastQueue() {}
+
+    /** Applies the broadcast limits; the first call starts listening for track changes. */
+    public static void configure(NowPlayingConfig cfg) {
+        playerIntervalNanos = cfg.getBroadcastPlayerIntervalSeconds() * 1_000_000_000L;
+        if (Math.abs(global.getPermitsPerSecond() * 60d - cfg.getBroadcastMessagesPerMinute()) > 1e-9) {
+            global = bucket(cfg.getBroadcastMessagesPerMinute());
+        }
+        if (STARTED.compareAndSet(false, true)) {
+            NowPlayingService.addListener(BroadcastQueue::onTrackChanged);
+            ConfigManager.addListener((previous, current) -> configure(current));
+        }
+    }
+
+    /** Queues {@code snapshot} for announcement on behalf of {@code player} (e.g. {@code /np g}), opt-in or not. */
+    public static void announce(UUID player, NowPlayingService.Snapshot snapshot) {
+        if (snapshot.isEmpty()) return;
+        enqueue(player, snapshot);
+    }
+
+    /** Cheap check for the tick thread: is there anything for {@link #drain()} to look at? */
+    public static boolean hasPending() {
+        return hasPending;
+    }
+
+    /** Removes and returns the announcements that may go out now; the rest stay queued. */
+    public static synchronized List<Announcement> drain() {
+        if (PENDING.isEmpty()) return List.of();
+        List<Announcement> out = new ArrayList<>();
+        long now = System.nanoTime();
+        long interval = playerIntervalNanos;
+        LAST_SENT.values().removeIf(sentAt -> now - sentAt >= interval);
+        for (Iterator<Map.Entry<UUID, NowPlayingService.Snapshot>> it = PENDING.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<UUID, NowPlayingService.Snapshot> e = it.next();
+            if (LAST_SENT.containsKey(e.getKey())) continue;
+            if (global.tryAcquire() > 0) break;
+            LAST_SENT.put(e.getKey(), now);
+            out.add(new Announcement(e.getKey(), e.getValue()));
+            it.remove();
+        }
+        hasPending = !PENDING.isEmpty();
+        return out;
+    }
+
+    private static void onTrackChanged(UUID key, NowPlayingService.Snapshot previous, NowPlayingService.Snapshot current) {
+        if (key.equals(NowPlayingService.LOCAL)) return;
+        if (current.isEmpty()) {
+            // Stopped or left: nothing stale should be announced later
+            synchronized (BroadcastQueue.class) {
+                PENDING.remove(key);
+                hasPending = !PENDING.isEmpty();
+            }
+            return;
+        }
+        // Metadata for the same track is not a new announcement
+        if (previous.sameTrack(current)) return;
+        if (!PlayerConfigStore.isBroadcastEnabled(key)) return;
+        enqueue(key, current);
+    }
+
+    private static synchronized void enqueue(UUID player, NowPlayingService.Snapshot snapshot) {
+        // Replacing keeps the player's place in line
+        PENDING.put(player, snapshot);
+        hasPending = true;
+    }
+
+    private static TokenBucket bucket(int perMinute) {
+        return new TokenBucket(perMinute / 60d, Math.max(1, perMinute / 4));
+    }
+
+    public record Announcement(UUID player, NowPlayingService.Snapshot snapshot) {}
+}
@@ -0,0 +1,12 @@
+package com.example.nowplaying;
+
+import java.nio.file.Path;
+
+/**
+ * Tells the engine where its config file and data live. The Fabric entrypoints answer with the game's config
+ * directory; the sidecar uses the directory it was given on the command line.
+ */
+@FunctionalInterface
+public interface ConfigDirProvider {
+    Path configDir();
+}
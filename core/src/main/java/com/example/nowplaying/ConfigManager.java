@@ -0,0 +1,167 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The current {@link NowPlayingConfig}: read from disk once, then kept as a frozen snapshot that everyone, commands
+ * included, reads from memory. Changes are copy-on-write: {@link #update} edits a copy, saves it and publishes it in
+ * one atomic swap. The config directory is watched too, so a hand-edited file takes effect shortly after it is saved;
+ * bursts of file events are debounced into one reload, and a reload that changes nothing (such as our own save) is
+ * not published.
+ * <p>
+ * {@link Listener}s get every new snapshot together with the previous one, in publishing order, on the
+ * "nowplaying-config" thread, so applying a change (say, moving the HTTP server to another port) never runs on the
+ * thread that made it.
+ */
+public final class ConfigManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final long DEBOUNCE_MILLIS = 500L;
+
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static volatile NowPlayingConfig current;
+    private static ScheduledExecutorService worker;
+    private static ScheduledFuture<?> pendingReload;
+    private static WatchService watchService;
+
+    private ConfigManager() {}
+
+    /** The current snapshot (read-only); loaded from disk on first use. */
+    public static NowPlayingConfig get() {
+        NowPlayingConfig cfg = current;
+        if (cfg != null) return cfg;
+        synchronized (ConfigManager.class) {
+            if (current == null) current = NowPlayingConfig.load().freeze();
+            return current;
+        }
+    }
+
+    /** Applies {@code edit} to a copy of the current config, saves it and publishes it; returns the new snapshot. */
+    public static synchronized NowPlayingConfig update(Consumer<NowPlayingConfig> edit) {
+        NowPlayingConfig next = get().copy();
+        edit.accept(next);
+        try {
+            next.save();
+        } catch (IOException e) {
+            // Still applies until the next restart
+            LOGGER.warn("Could not save the NowPlaying config to {}", NowPlayingConfig.configPath(), e);
+        }
+        publish(next.freeze());
+        return next;
+    }
+
+    public static void addListener(Listener listener) {
+        LISTENERS.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    public static void removeListener(Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /** Starts watching the config file for outside edits; later calls do nothing. */
+    public static synchronized void watch() throws IOException {
+        if (watchService != null) return;
+        Path file = NowPlayingConfig.configPath().toAbsolutePath();
+        Path dir = file.getParent();
+        Files.createDirectories(dir);
+        WatchService ws = dir.getFileSystem().newWatchService();
+        dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchService = ws;
+        Thread t = new Thread(() -> watchLoop(ws, file.getFileName()), "nowplaying-config-watch");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Re-reads the file now and publishes it if anything changed. */
+    public static synchronized void reload() {
+        pendingReload = null;
+        NowPlayingConfig next;
+        try {
+            next = NowPlayingConfig.readStrict();
+        } catch (IOException e) {
+            // Locked or half-written; the next file event tries again
+            LOGGER.warn("Could not reload the NowPlaying config, keeping the current one: {}", e.toString());
+            return;
+        }
+        if (next.sameSettings(get())) return;
+        LOGGER.info("NowPlaying config reloaded from {}", NowPlayingConfig.configPath());
+        publish(next.freeze());
+    }
+
+    private static void watchLoop(WatchService ws, Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = ws.take();
+                boolean ours = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // Fabric's config directory is shared with every other mod
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                        ours = true;
+                    }
+                }
+                if (ours) scheduleReload();
+                if (!key.reset()) {
+                    LOGGER.warn("NowPlaying config directory is no longer watched");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    // Editors write in several steps (truncate, write, rename): wait for the events to stop before reading
+    private static synchronized void scheduleReload() {
+        if (pendingReload != null) pendingReload.cancel(false);
+        pendingReload = worker().schedule(ConfigManager::reload, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Callers hold the class lock, so snapshots are swapped and queued for the listeners in the same order
+    private static void publish(NowPlayingConfig next) {
+        NowPlayingConfig previous = get();
+        current = next;
+        worker().execute(() -> {
+            for (Listener listener : LISTENERS) {
+                try {
+                    listener.onConfigChanged(previous, next);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Config listener {} failed", listener, e);
+                }
+            }
+        });
+    }
+
+    private static synchronized ScheduledExecutorService worker() {
+        if (worker == null) {
+            worker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "nowplaying-config");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return worker;
+    }
+
+    /** Receives each newly published snapshot; both arguments are frozen. */
+    @FunctionalInterface
+    public interface Listener {
+        void onConfigChanged(NowPlayingConfig previous, NowPlayingConfig current);
+    }
+}
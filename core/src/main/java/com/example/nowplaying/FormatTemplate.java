@@ -0,0 +1,125 @@
+package com.example.nowplaying;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A now-playing message template, parsed once into segments. {@code {name}} inserts a field;
+ * {@code {prefix|name|suffix}} inserts it with the surrounding text, or nothing at all when the field is empty.
+ * Fields: {@code title}, {@code artist}, {@code source}, {@code album}, {@code duration} (m:ss), {@code playcount}.
+ * Anything else, including unknown names and unbalanced braces, is copied as written.
+ * <p>
+ * The default reproduces the original message: {@value #DEFAULT}.
+ */
+public final class FormatTemplate {
+    public static final String DEFAULT = "Now Playing: {|artist| — }{title}{ [|source|]}";
+
+    private final String pattern;
+    private final Segment[] segments;
+    private final int sizeHint;
+
+    private FormatTemplate(String pattern, Segment[] segments) {
+        this.pattern = pattern;
+        this.segments = segments;
+        int literal = 0;
+        for (Segment s : segments) literal += s.prefix.length() + s.suffix.length();
+        this.sizeHint = literal + 64;
+    }
+
+    public static FormatTemplate compile(String pattern) {
+        String p = pattern == null || pattern.isBlank() ? DEFAULT : pattern;
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int i = 0;
+        while (i < p.length()) {
+            int open = p.indexOf('{', i);
+            int close = open < 0 ? -1 : p.indexOf('}', open + 1);
+            if (close < 0) {
+                text.append(p, i, p.length());
+                break;
+            }
+            text.append(p, i, open);
+            Segment field = parseField(p.substring(open + 1, close));
+            if (field == null) {
+                text.append(p, open, close + 1);
+            } else {
+                if (text.length() > 0) segments.add(Segment.literal(text.toString()));
+                text.setLength(0);
+                segments.add(field);
+            }
+            i = close + 1;
+        }
+        if (text.length() > 0) segments.add(Segment.literal(text.toString()));
+        return new FormatTemplate(p, segments.toArray(new Segment[0]));
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    /** Renders {@code s}; an empty snapshot always renders as the empty string. */
+    public String render(NowPlayingService.Snapshot s) {
+        if (s.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder(sizeHint);
+        for (Segment segment : segments) {
+            if (segment.field == null) {
+                sb.append(segment.prefix);
+                continue;
+            }
+            String value = segment.field.value(s);
+            if (!value.isEmpty()) sb.append(segment.prefix).append(value).append(segment.suffix);
+        }
+        return sb.toString();
+    }
+
+    // "name" or "prefix|name|suffix"; null if it is not a field reference
+    private static Segment parseField(String body) {
+        String[] parts = body.split("\\|", -1);
+        if (parts.length != 1 && parts.length != 3) return null;
+        Field field = Field.named(parts.length == 1 ? parts[0] : parts[1]);
+        if (field == null) return null;
+        return parts.length == 1 ? new Segment("", field, "") : new Segment(parts[0], field, parts[2]);
+    }
+
+    /** A literal (no field; the text is in {@code prefix}) or a field with its conditional prefix and suffix. */
+    private record Segment(String prefix, Field field, String suffix) {
+        static Segment literal(String text) {
+            return new Segment(text, null, "");
+        }
+    }
+
+    private enum Field {
+        TITLE,
+        ARTIST,
+        SOURCE,
+        ALBUM,
+        DURATION,
+        PLAYCOUNT;
+
+        static Field named(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        String value(NowPlayingService.Snapshot s) {
+            return switch (this) {
+                case TITLE -> s.title();
+                case ARTIST -> s.artist();
+                case SOURCE -> s.source();
+                case ALBUM -> s.metadata().album();
+                case DURATION -> duration(s.metadata().durationMillis());
+                case PLAYCOUNT -> s.metadata().playCount() > 0 ? String.valueOf(s.metadata().playCount()) : "";
+            };
+        }
+
+        private static String duration(long millis) {
+            if (millis <= 0) return "";
+            long seconds = millis / 1000;
+            return String.format(Locale.ROOT, "%d:%02d", seconds / 60, seconds % 60);
+        }
+    }
+}
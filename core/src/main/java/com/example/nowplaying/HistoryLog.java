@@ -0,0 +1,277 @@
+package com.example.nowplaying;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Append-only play history, one segment file per week (Monday 00:00 UTC), e.g. {@code plays-2026-10-12.bin}.
+ * Players, artists and titles are interned into append-only dictionaries ({@code *.dict}: {@code short length,
+ * UTF-8 bytes} per entry, the id being the entry's position), so every play is a fixed 16-byte record
+ * {@code int secondsIntoWeek, int player, int artist, int title}.
+ * <p>
+ * Opening reads the dictionaries and only the current and previous week: this week's segment seeds the per-player
+ * and server-wide artist counts, which are then updated with every play, so top-N queries never scan the log; both
+ * weeks seed each player's recent plays. Older segments are never read again. Appends are buffered until
+ * {@link #flush()}, which writes new dictionary entries before the records that use them. A torn tail left by a
+ * crash is cut off when the files are opened.
+ */
+final class HistoryLog implements Closeable {
+    static final int RECENT_PER_PLAYER = 20;
+    private static final int RECORD_BYTES = 16;
+    private static final int MAX_ENTRY_BYTES = 4096;
+    private static final int MAX_TEXT = 256; // as in NowPlayingService; keeps every entry under MAX_ENTRY_BYTES
+
+    private final Path dir;
+    private final Dictionary players;
+    private final Dictionary artists;
+    private final Dictionary titles;
+    // Plays not yet on disk, per week
+    private final Map<Long, ByteArrayOutputStream> pending = new TreeMap<>();
+    private final Map<Integer, ArrayDeque<Play>> recent = new HashMap<>();
+    // Counts for the week starting at weekStart: per player -> artist, and for the whole server
+    private final Map<Integer, Map<Integer, int[]>> playerArtists = new HashMap<>();
+    private final Map<Integer, int[]> serverArtists = new HashMap<>();
+    private long weekStart;
+
+    HistoryLog(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        players = new Dictionary(dir.resolve("players.dict"));
+        artists = new Dictionary(dir.resolve("artists.dict"));
+        titles = new Dictionary(dir.resolve("titles.dict"));
+        weekStart = weekStart(System.currentTimeMillis());
+        long previousWeek = weekStart - 7L * 86_400_000L;
+        replay(previousWeek);
+        replay(weekStart);
+    }
+
+    synchronized void append(long playedAtMillis, UUID player, String artist, String title) {
+        long week = weekStart(playedAtMillis);
+        int p = players.intern(player.toString());
+        int a = artists.intern(clip(artist));
+        int t = titles.intern(clip(title));
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES)
+            .putInt((int) ((playedAtMillis - week) / 1000L)).putInt(p).putInt(a).putInt(t);
+        pending.computeIfAbsent(week, w -> new ByteArrayOutputStream(4096)).write(record.array(), 0, RECORD_BYTES);
+        if (week > weekStart) {
+            // A new week starts with empty counts; the old ones stay on disk
+            weekStart = week;
+            playerArtists.clear();
+            serverArtists.clear();
+        }
+        apply(week, p, new Play(playedAtMillis, a, t));
+    }
+
+    synchronized void flush() throws IOException {
+        if (pending.isEmpty()) return;
+        // Dictionaries first: a record must never reach the disk before the strings it refers to
+        players.flush();
+        artists.flush();
+        titles.flush();
+        for (Iterator<Map.Entry<Long, ByteArrayOutputStream>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, ByteArrayOutputStream> e = it.next();
+            appendAll(segment(e.getKey()), e.getValue().toByteArray());
+            it.remove();
+        }
+    }
+
+    /** Newest first, up to {@code limit} (at most {@value #RECENT_PER_PLAYER}). */
+    synchronized List<ListeningHistory.Play> recent(UUID player, int limit) {
+        int p = players.idOf(player.toString());
+        ArrayDeque<Play> plays = p < 0 ? null : recent.get(p);
+        if (plays == null) return List.of();
+        List<ListeningHistory.Play> out = new ArrayList<>(Math.min(limit, plays.size()));
+        for (Iterator<Play> it = plays.descendingIterator(); it.hasNext() && out.size() < limit; ) {
+            Play play = it.next();
+            out.add(new ListeningHistory.Play(Instant.ofEpochMilli(play.at()), artists.get(play.artist()),
+                titles.get(play.title())));
+        }
+        return out;
+    }
+
+    /** Most played artists this week (UTC), for one player or, with {@code player == null}, the whole server. */
+    synchronized List<ListeningHistory.ArtistCount> topArtists(UUID player, int limit) {
+        if (weekStart(System.currentTimeMillis()) != weekStart) return List.of();
+        Map<Integer, int[]> counts;
+        if (player == null) {
+            counts = serverArtists;
+        } else {
+            int p = players.idOf(player.toString());
+            counts = p < 0 ? null : playerArtists.get(p);
+        }
+        if (counts == null || limit <= 0) return List.of();
+        // Bounded min-heap: O(artists * log limit), no full sort
+        PriorityQueue<Map.Entry<Integer, int[]>> top =
+            new PriorityQueue<>(limit + 1, Comparator.comparingInt(e -> e.getValue()[0]));
+        for (Map.Entry<Integer, int[]> e : counts.entrySet()) {
+            top.add(e);
+            if (top.size() > limit) top.poll();
+        }
+        List<ListeningHistory.ArtistCount> out = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            Map.Entry<Integer, int[]> e = top.poll();
+            out.add(new ListeningHistory.ArtistCount(artists.get(e.getKey()), e.getValue()[0]));
+        }
+        out.sort(Comparator.comparingInt(ListeningHistory.ArtistCount::plays).reversed());
+        return out;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+    }
+
+    private void apply(long week, int player, Play play) {
+        ArrayDeque<Play> plays = recent.computeIfAbsent(player, k -> new ArrayDeque<>(4));
+        plays.addLast(play);
+        if (plays.size() > RECENT_PER_PLAYER) plays.removeFirst();
+        if (week != weekStart) return;
+        playerArtists.computeIfAbsent(player, k -> new HashMap<>()).computeIfAbsent(play.artist(), k -> new int[1])[0]++;
+        serverArtists.computeIfAbsent(play.artist(), k -> new int[1])[0]++;
+    }
+
+    private void replay(long week) throws IOException {
+        Path file = segment(week);
+        if (!Files.exists(file)) return;
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        // A partial record at the end is a torn append: cut it off so later records stay aligned
+        int whole = buf.capacity() - buf.capacity() % RECORD_BYTES;
+        if (whole < buf.capacity()) truncate(file, whole);
+        while (buf.position() < whole) {
+            long at = week + (buf.getInt() & 0xFFFFFFFFL) * 1000L;
+            int p = buf.getInt();
+            int a = buf.getInt();
+            int t = buf.getInt();
+            // Points past a dictionary: its strings never made it to disk
+            if (!players.contains(p) || !artists.contains(a) || !titles.contains(t)) continue;
+            apply(week, p, new Play(at, a, t));
+        }
+    }
+
+    // Appends in one go, or not at all: a failed write is cut back off so a retry cannot misalign the file
+    private static void appendAll(Path file, byte[] bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long start = ch.size();
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                long pos = start;
+                while (buf.hasRemaining()) pos += ch.write(buf, pos);
+            } catch (IOException e) {
+                try {
+                    ch.truncate(start);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(size);
+        }
+    }
+
+    private static String clip(String s) {
+        return s.length() > MAX_TEXT ? s.substring(0, MAX_TEXT) : s;
+    }
+
+    private Path segment(long week) {
+        return dir.resolve("plays-" + LocalDate.ofInstant(Instant.ofEpochMilli(week), ZoneOffset.UTC) + ".bin");
+    }
+
+    static long weekStart(long epochMillis) {
+        LocalDate monday = LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC)
+            .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return monday.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private record Play(long at, int artist, int title) {}
+
+    /** Append-only string table; ids are positions, so they never change once written. */
+    private static final class Dictionary {
+        private final Path file;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int persisted;
+
+        Dictionary(Path file) throws IOException {
+            this.file = file;
+            if (!Files.exists(file)) return;
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+            long valid = 0;
+            while (buf.remaining() >= 2) {
+                int len = buf.getShort() & 0xFFFF;
+                if (len > MAX_ENTRY_BYTES || buf.remaining() < len) break;
+                byte[] bytes = new byte[len];
+                buf.get(bytes);
+                add(new String(bytes, StandardCharsets.UTF_8));
+                valid = buf.position();
+            }
+            persisted = values.size();
+            // Torn tail: cut it off so later appends line up again
+            if (valid < buf.capacity()) truncate(file, valid);
+        }
+
+        int intern(String value) {
+            Integer id = ids.get(value);
+            return id != null ? id : add(value);
+        }
+
+        int idOf(String value) {
+            return ids.getOrDefault(value, -1);
+        }
+
+        boolean contains(int id) {
+            return id >= 0 && id < values.size();
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        void flush() throws IOException {
+            if (persisted == values.size()) return;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int i = persisted; i < values.size(); i++) {
+                byte[] utf8 = values.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeShort(utf8.length);
+                out.write(utf8);
+            }
+            appendAll(file, bytes.toByteArray());
+            persisted = values.size();
+        }
+
+        private int add(String value) {
+            int id = values.size();
+            values.add(value);
+            ids.put(value, id);
+            return id;
+        }
+    }
+}
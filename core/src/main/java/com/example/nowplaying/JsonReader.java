@@ -0,0 +1,291 @@
+package com.example.nowplaying;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Small single-pass pull parser for JSON, read straight from a stream.
+ * Scalars are decoded into one reused buffer, so skipped values and structure cost no allocation;
+ * only {@link #nextName()} and {@link #nextString()} materialize strings.
+ */
+final class JsonReader {
+    enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Reader in;
+    private final char[] buf = new char[1024];
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[16];
+    private int depth;
+
+    private Token peeked;
+    private final StringBuilder scalar = new StringBuilder(64);
+
+    JsonReader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    JsonReader(Reader in) {
+        this.in = in;
+        stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    Token peek() throws IOException {
+        if (peeked != null) return peeked;
+        int scope = stack[depth - 1];
+        switch (scope) {
+            case EMPTY_ARRAY, NONEMPTY_ARRAY -> {
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                int c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                if (c == -1) throw syntaxError("unterminated array");
+                if (scope == NONEMPTY_ARRAY) {
+                    if (c != ',') throw syntaxError("expected ',' or ']'");
+                } else {
+                    pos--;
+                }
+            }
+            case EMPTY_OBJECT, NONEMPTY_OBJECT -> {
+                int c = nextNonWhitespace();
+                if (c == '}') return peeked = Token.END_OBJECT;
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') throw syntaxError("expected ',' or '}'");
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') throw syntaxError("expected name");
+                stack[depth - 1] = DANGLING_NAME;
+                readString();
+                return peeked = Token.NAME;
+            }
+            case DANGLING_NAME -> {
+                if (nextNonWhitespace() != ':') throw syntaxError("expected ':'");
+                stack[depth - 1] = NONEMPTY_OBJECT;
+            }
+            case EMPTY_DOCUMENT -> {
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                if (nextNonWhitespace() == -1) return peeked = Token.END_DOCUMENT;
+                pos--;
+            }
+            default -> {
+                if (nextNonWhitespace() == -1) return peeked = Token.END_DOCUMENT;
+                throw syntaxError("trailing data");
+            }
+        }
+        return peeked = readValueToken();
+    }
+
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        return scalar.toString();
+    }
+
+    /** Returns the next string, number or boolean as text, and {@code null} for a JSON null. */
+    String nextString() throws IOException {
+        Token t = peek();
+        if (t == Token.NULL) {
+            peeked = null;
+            return null;
+        }
+        if (t != Token.STRING && t != Token.NUMBER && t != Token.BOOLEAN) throw syntaxError("expected a scalar but was " + t);
+        peeked = null;
+        return scalar.toString();
+    }
+
+    /** True if the next value is a name or scalar equal to {@code expected}; consumes it either way. */
+    boolean nextEquals(String expected) throws IOException {
+        Token t = peek();
+        if (t != Token.NAME && t != Token.STRING && t != Token.NUMBER && t != Token.BOOLEAN) throw syntaxError("expected a scalar but was " + t);
+        peeked = null;
+        return scalar.length() == expected.length() && expected.contentEquals(scalar);
+    }
+
+    /** Skips the next value, including nested objects and arrays, without materializing it. */
+    void skipValue() throws IOException {
+        int count = 0;
+        do {
+            Token t = peek();
+            peeked = null;
+            switch (t) {
+                case BEGIN_OBJECT -> { push(EMPTY_OBJECT); count++; }
+                case BEGIN_ARRAY -> { push(EMPTY_ARRAY); count++; }
+                case END_OBJECT, END_ARRAY -> { depth--; count--; }
+                case END_DOCUMENT -> throw syntaxError("unexpected end of document");
+                default -> { }
+            }
+        } while (count > 0);
+    }
+
+    private void expect(Token token) throws IOException {
+        Token t = peek();
+        if (t != token) throw syntaxError("expected " + token + " but was " + t);
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = scope;
+    }
+
+    private Token readValueToken() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{': return Token.BEGIN_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case '"':
+                readString();
+                return Token.STRING;
+            case 't':
+                readLiteral("true", c);
+                return Token.BOOLEAN;
+            case 'f':
+                readLiteral("false", c);
+                return Token.BOOLEAN;
+            case 'n':
+                readLiteral("null", c);
+                return Token.NULL;
+            case -1: throw syntaxError("unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber(c);
+                    return Token.NUMBER;
+                }
+                throw syntaxError("unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void readString() throws IOException {
+        scalar.setLength(0);
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buf[pos++];
+                if (c == '"') {
+                    scalar.append(buf, start, pos - 1 - start);
+                    return;
+                }
+                if (c == '\\') {
+                    scalar.append(buf, start, pos - 1 - start);
+                    scalar.append(readEscape());
+                    start = pos;
+                }
+            }
+            scalar.append(buf, start, pos - start);
+            if (!fill()) throw syntaxError("unterminated string");
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"': case '\\': case '/': return (char) c;
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int d = Character.digit(read(), 16);
+                    if (d < 0) throw syntaxError("bad unicode escape");
+                    value = (value << 4) | d;
+                }
+                // Surrogate pairs arrive as two escapes and are appended one half at a time
+                return (char) value;
+            default: throw syntaxError("bad escape");
+        }
+    }
+
+    private void readLiteral(String literal, int first) throws IOException {
+        scalar.setLength(0);
+        scalar.append((char) first);
+        for (int i = 1; i < literal.length(); i++) {
+            int c = read();
+            if (c != literal.charAt(i)) throw syntaxError("expected " + literal);
+            scalar.append((char) c);
+        }
+    }
+
+    private void readNumber(int first) throws IOException {
+        scalar.setLength(0);
+        scalar.append((char) first);
+        while (true) {
+            if (pos == limit && !fill()) return;
+            char c = buf[pos];
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                scalar.append(c);
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) return -1;
+            char c = buf[pos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) throw syntaxError("unexpected end of document");
+        return buf[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        // Keep one char behind pos so a single pos-- after nextNonWhitespace() stays valid
+        if (limit > 0) {
+            buf[0] = buf[limit - 1];
+            pos = 1;
+            limit = 1;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n <= 0) return false;
+        limit += n;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message + " at depth " + depth);
+    }
+}
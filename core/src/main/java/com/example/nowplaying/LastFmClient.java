@@ -0,0 +1,486 @@
+package com.example.nowplaying;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Async client for the Last.fm web API. One shared HttpClient keeps connections alive (HTTP/2 where the server
+ * offers it), responses are requested gzip-compressed and parsed straight from the received body.
+ * The base URL is configurable so a local stub can stand in for ws.audioscrobbler.com.
+ * <p>
+ * Write methods ({@code track.scrobble}, {@code track.updateNowPlaying}) are signed POSTs made on behalf of a user
+ * session: {@code api_sig} is the MD5 of all parameters sorted by name and concatenated, followed by the secret.
+ */
+public final class LastFmClient {
+    public static final String DEFAULT_BASE_URL = "https://ws.audioscrobbler.com/2.0/";
+    static final int MAX_SCROBBLES_PER_REQUEST = 50;
+
+    private final HttpClient http;
+    private final String baseUrl;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+
+    public LastFmClient(String baseUrl, Duration connectTimeout, Duration requestTimeout) {
+        this.baseUrl = baseUrl(baseUrl);
+        this.connectTimeout = Objects.requireNonNull(connectTimeout, "connectTimeout");
+        this.requestTimeout = Objects.requireNonNull(requestTimeout, "requestTimeout");
+        this.http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    public static LastFmClient create(NowPlayingConfig cfg) {
+        Duration timeout = Duration.ofMillis(cfg.getLastfmTimeoutMs());
+        return new LastFmClient(cfg.getLastfmApiUrl(), timeout, timeout);
+    }
+
+    /** Whether {@link #create} would build a client just like this one from {@code cfg}, so this one can be kept. */
+    boolean matches(NowPlayingConfig cfg) {
+        Duration timeout = Duration.ofMillis(cfg.getLastfmTimeoutMs());
+        return baseUrl.equals(baseUrl(cfg.getLastfmApiUrl())) && connectTimeout.equals(timeout)
+            && requestTimeout.equals(timeout);
+    }
+
+    private static String baseUrl(String url) {
+        return url == null || url.isBlank() ? DEFAULT_BASE_URL : url.trim();
+    }
+
+    /** Lets requests already sent complete, then releases the connections and the selector thread. */
+    void shutdown() {
+        http.shutdown();
+    }
+
+    /** Fetches the most recent (or currently playing) track of {@code user}; completes with null if there is none. */
+    public CompletableFuture<RecentTrack> recentTrack(String apiKey, String user) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("method", "user.getrecenttracks");
+        params.put("user", user);
+        params.put("api_key", apiKey);
+        params.put("limit", "1");
+        return get(params, LastFmClient::parseFirstTrack);
+    }
+
+    /** Fetches album, duration, artwork and play count of a track; completes with {@link TrackMetadata#NONE} if unknown. */
+    public CompletableFuture<TrackMetadata> trackInfo(String apiKey, String artist, String track) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("method", "track.getInfo");
+        params.put("artist", artist);
+        params.put("track", track);
+        params.put("api_key", apiKey);
+        params.put("autocorrect", "1");
+        return get(params, LastFmClient::parseTrackInfo);
+    }
+
+    /**
+     * Submits up to {@value #MAX_SCROBBLES_PER_REQUEST} plays of one user in a single {@code track.scrobble};
+     * completes with the number Last.fm accepted (the rest were ignored by its filters, which a retry won't change).
+     */
+    CompletableFuture<Integer> scrobble(String apiKey, String secret, String sessionKey, List<ScrobbleQueue.Scrobble> batch) {
+        if (batch.isEmpty() || batch.size() > MAX_SCROBBLES_PER_REQUEST) {
+            throw new IllegalArgumentException("Batch of " + batch.size() + " scrobbles");
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("method", "track.scrobble");
+        for (int i = 0; i < batch.size(); i++) {
+            ScrobbleQueue.Scrobble s = batch.get(i);
+            params.put("artist[" + i + "]", s.artist());
+            params.put("track[" + i + "]", s.title());
+            params.put("timestamp[" + i + "]", String.valueOf(s.timestamp()));
+            if (!s.album().isEmpty()) params.put("album[" + i + "]", s.album());
+            if (s.durationSeconds() > 0) params.put("duration[" + i + "]", String.valueOf(s.durationSeconds()));
+        }
+        params.put("api_key", apiKey);
+        params.put("sk", sessionKey);
+        return post(params, secret, LastFmClient::parseScrobbleResponse);
+    }
+
+    /** Tells Last.fm what the user is listening to right now; nothing is recorded in their history. */
+    CompletableFuture<Void> updateNowPlaying(String apiKey, String secret, String sessionKey, String artist, String track,
+                                             String album, int durationSeconds) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("method", "track.updateNowPlaying");
+        params.put("artist", artist);
+        params.put("track", track);
+        if (!album.isEmpty()) params.put("album", album);
+        if (durationSeconds > 0) params.put("duration", String.valueOf(durationSeconds));
+        params.put("api_key", apiKey);
+        params.put("sk", sessionKey);
+        return post(params, secret, reader -> null);
+    }
+
+    <T> CompletableFuture<T> get(Map<String, String> params, Parser<T> parser) {
+        StringBuilder url = new StringBuilder(baseUrl).append(baseUrl.indexOf('?') < 0 ? '?' : '&');
+        params.forEach((k, v) -> url.append(urlEncode(k)).append('=').append(urlEncode(v)).append('&'));
+        url.append("format=json");
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url.toString()))
+            .timeout(requestTimeout)
+            .header("Accept", "application/json")
+            .header("Accept-Encoding", "gzip")
+            .GET()
+            .build();
+        return send(request, params, parser);
+    }
+
+    <T> CompletableFuture<T> post(Map<String, String> params, String secret, Parser<T> parser) {
+        StringBuilder form = new StringBuilder();
+        params.forEach((k, v) -> form.append(urlEncode(k)).append('=').append(urlEncode(v)).append('&'));
+        form.append("api_sig=").append(sign(params, secret)).append("&format=json");
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl))
+            .timeout(requestTimeout)
+            .header("Accept", "application/json")
+            .header("Accept-Encoding", "gzip")
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(form.toString(), StandardCharsets.UTF_8))
+            .build();
+        return send(request, params, parser);
+    }
+
+    // "format" and "callback" are not part of the signature; everything else is, sorted by name
+    static String sign(Map<String, String> params, String secret) {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(params).forEach((k, v) -> {
+            if (!k.equals("format") && !k.equals("callback")) sb.append(k).append(v);
+        });
+        sb.append(secret);
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            return HexFormat.of().formatHex(md5.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    // Parsed before the call is recorded, so error codes sent with HTTP 200 show up in the metrics too
+    private <T> CompletableFuture<T> send(HttpRequest request, Map<String, String> params, Parser<T> parser) {
+        NowPlayingMetrics.LastFmSeries metrics = NowPlayingMetrics.lastFm(params.getOrDefault("method", "unknown"));
+        long start = System.nanoTime();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(LastFmClient::toBody)
+            .thenApply(body -> parse(body, parser))
+            .whenComplete((result, error) -> {
+                if (error == null) {
+                    metrics.record(start, 200, 0);
+                } else if (LastFmPoller.unwrap(error) instanceof LastFmException e) {
+                    metrics.record(start, e.getHttpStatus(), e.getErrorCode());
+                } else {
+                    metrics.record(start, 0, 0);
+                }
+            });
+    }
+
+    private static Body toBody(HttpResponse<byte[]> response) {
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+            .map(v -> v.equalsIgnoreCase("gzip")).orElse(false);
+        Body body = new Body(response.statusCode(), response.body(), gzip);
+        if (body.status() / 100 != 2) {
+            throw new UncheckedIOException(body.toError());
+        }
+        return body;
+    }
+
+    private static <T> T parse(Body body, Parser<T> parser) {
+        try (InputStream in = body.open()) {
+            return parser.parse(new JsonReader(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Walks {"recenttracks":{"track":[{...}, ...]}} and stops reading after the first track; an {"error":...}
+    // document is a failure even when it comes with HTTP 200
+    static RecentTrack parseFirstTrack(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) return null;
+        int errorCode = 0;
+        String message = "user.getrecenttracks failed";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "recenttracks" -> {
+                    return readFirstTrack(reader);
+                }
+                case "error" -> errorCode = (int) parseLong(reader.nextString());
+                case "message" -> message = Objects.requireNonNullElse(reader.nextString(), message);
+                default -> reader.skipValue();
+            }
+        }
+        if (errorCode != 0) throw new LastFmException(200, errorCode, message);
+        return null;
+    }
+
+    private static RecentTrack readFirstTrack(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) return null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextEquals("track")) {
+                reader.skipValue();
+                continue;
+            }
+            // A single track is sent as a bare object instead of a one-element array
+            if (reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                if (!reader.hasNext()) return null;
+            }
+            return reader.peek() == JsonReader.Token.BEGIN_OBJECT ? readTrack(reader) : null;
+        }
+        return null;
+    }
+
+    private static RecentTrack readTrack(JsonReader reader) throws IOException {
+        String title = "";
+        String artist = "";
+        boolean nowPlaying = false;
+        long scrobbledAt = 0L;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name" -> title = Objects.requireNonNullElse(readText(reader), "");
+                case "artist" -> artist = Objects.requireNonNullElse(readText(reader), "");
+                case "@attr" -> nowPlaying = readNowPlaying(reader);
+                case "date" -> scrobbledAt = readUts(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (title.isBlank() && artist.isBlank()) return null;
+        return new RecentTrack(title, artist, nowPlaying, nowPlaying ? 0L : scrobbledAt);
+    }
+
+    // Walks {"scrobbles":{"@attr":{"accepted":N,"ignored":M},...}}; an {"error":...} document is a failure
+    // even when it comes with HTTP 200
+    static int parseScrobbleResponse(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) return 0;
+        int errorCode = 0;
+        String message = "track.scrobble failed";
+        int accepted = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "error" -> errorCode = (int) parseLong(reader.nextString());
+                case "message" -> message = Objects.requireNonNullElse(reader.nextString(), message);
+                case "scrobbles" -> accepted = readAccepted(reader);
+                default -> reader.skipValue();
+            }
+        }
+        if (errorCode != 0) throw new LastFmException(200, errorCode, message);
+        return accepted;
+    }
+
+    private static int readAccepted(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return 0;
+        }
+        int accepted = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextEquals("@attr") || reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextEquals("accepted")) {
+                    accepted = (int) parseLong(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return accepted;
+    }
+
+    // {"uts":"1792278840","#text":"17 Oct 2026, 21:14"}: when the track was scrobbled, in epoch seconds
+    private static long readUts(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return 0L;
+        }
+        long uts = 0L;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextEquals("uts")) {
+                uts = parseLong(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return uts;
+    }
+
+    // Walks {"track":{"duration":"...","playcount":"...","album":{"title":"...","image":[...]}}}; like
+    // parseFirstTrack, an {"error":...} document is a failure whatever the HTTP status
+    static TrackMetadata parseTrackInfo(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) return TrackMetadata.NONE;
+        int errorCode = 0;
+        String message = "track.getInfo failed";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("error")) {
+                errorCode = (int) parseLong(reader.nextString());
+                continue;
+            }
+            if (name.equals("message")) {
+                message = Objects.requireNonNullElse(reader.nextString(), message);
+                continue;
+            }
+            if (!name.equals("track") || reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String album = "";
+            String artwork = "";
+            long duration = 0L;
+            long playCount = 0L;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "duration" -> duration = parseLong(reader.nextString());
+                    case "playcount" -> playCount = parseLong(reader.nextString());
+                    case "album" -> {
+                        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "title" -> album = Objects.requireNonNullElse(reader.nextString(), "");
+                                case "image" -> artwork = readLargestImage(reader);
+                                default -> reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            return new TrackMetadata(album, duration, artwork, playCount);
+        }
+        if (errorCode != 0) throw new LastFmException(200, errorCode, message);
+        return TrackMetadata.NONE;
+    }
+
+    // Images are listed smallest first; keep the last one that has a URL
+    private static String readLargestImage(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+            reader.skipValue();
+            return "";
+        }
+        String url = "";
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String text = readText(reader);
+            if (text != null && !text.isBlank()) url = text;
+        }
+        reader.endArray();
+        return url;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value == null ? 0L : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    // Fields are either plain strings or {"mbid":"...","#text":"..."} objects
+    static String readText(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) return reader.nextString();
+        String text = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextEquals("#text")) {
+                text = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return text;
+    }
+
+    private static boolean readNowPlaying(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return false;
+        }
+        boolean nowPlaying = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextEquals("nowplaying")) {
+                nowPlaying = reader.nextEquals("true");
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return nowPlaying;
+    }
+
+    private static String urlEncode(String s) {
+        return java.net.URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    interface Parser<T> {
+        T parse(JsonReader reader) throws IOException;
+    }
+
+    /** Raw response; decompressed lazily when parsed. */
+    record Body(int status, byte[] bytes, boolean gzip) {
+        InputStream open() throws IOException {
+            InputStream in = new ByteArrayInputStream(bytes);
+            return gzip ? new GZIPInputStream(in) : in;
+        }
+
+        // Error bodies look like {"error":29,"message":"Rate Limit Exceeded"}
+        LastFmException toError() {
+            int code = 0;
+            String message = "HTTP " + status;
+            try (InputStream in = open()) {
+                JsonReader reader = new JsonReader(in);
+                if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "error" -> code = Integer.parseInt(Objects.requireNonNullElse(reader.nextString(), "0"));
+                            case "message" -> message = Objects.requireNonNullElse(reader.nextString(), message);
+                            default -> reader.skipValue();
+                        }
+                    }
+                }
+            } catch (IOException | NumberFormatException ignored) {
+                // Not a Last.fm error document (proxy page, truncated body); keep the HTTP status
+            }
+            return new LastFmException(status, code, message);
+        }
+    }
+
+    /** {@code scrobbledAt} is the scrobble's timestamp in epoch seconds, 0 while the track is still playing. */
+    public record RecentTrack(String title, String artist, boolean nowPlaying, long scrobbledAt) {}
+}
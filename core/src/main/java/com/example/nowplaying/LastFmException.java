@@ -0,0 +1,39 @@
+package com.example.nowplaying;
+
+import java.io.IOException;
+
+/**
+ * A failed Last.fm call: the HTTP status plus the API error code from the body (0 if there was none).
+ * See https://www.last.fm/api/errorcodes for the codes.
+ */
+public final class LastFmException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /** Also what track.getInfo answers for a track Last.fm does not know. */
+    public static final int INVALID_PARAMETERS = 6;
+    public static final int INVALID_SESSION_KEY = 9;
+    public static final int INVALID_API_KEY = 10;
+    public static final int SUSPENDED_API_KEY = 26;
+    public static final int RATE_LIMIT_EXCEEDED = 29;
+
+    private final int httpStatus;
+    private final int errorCode;
+
+    public LastFmException(int httpStatus, int errorCode, String message) {
+        super(message);
+        this.httpStatus = httpStatus;
+        this.errorCode = errorCode;
+    }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isRateLimited() {
+        return errorCode == RATE_LIMIT_EXCEEDED || httpStatus == 429;
+    }
+}
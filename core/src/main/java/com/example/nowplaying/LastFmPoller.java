@@ -0,0 +1,442 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+/**
+ * Periodically polls Last.fm for the currently playing track of every subscribed user and updates NowPlayingService.
+ * Each subscription (an online player, or {@link NowPlayingService#LOCAL} for the client / console user) gets its
+ * own timer on a {@link TimingWheel}, where adding, rescheduling and cancelling stay O(1) however many players
+ * come and go; timers are offset within the poll period so polls are spread out instead of fired in a burst, and due
+ * polls run on a small fixed pool of poller threads.
+ * <p>
+ * Every poll reschedules itself with an adaptive delay: faster for a short window after a track change, slower while
+ * nothing is playing, and exponential backoff with jitter on errors. Requests draw from an {@link ApiKeyPool}: shared
+ * keys are load-balanced by the budget they have left, players who set their own key are polled with it instead, and
+ * keys Last.fm rejects or rate-limits are quarantined for a while.
+ * <p>
+ * Responses are cached briefly per (method, user), so players that follow the same Last.fm account share one
+ * request instead of each fetching the identical result; cache hits do not use up the request budget.
+ */
+public final class LastFmPoller {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+
+    private static final int POLL_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final long BOOST_WINDOW_MILLIS = 30_000L;
+    private static final long MAX_BACKOFF_MILLIS = 300_000L;
+    private static final long WARN_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+    private static final int CACHE_ENTRIES = 1024;
+    private static final long TIMER_TICK_MILLIS = 50L;
+    private static final int TIMER_SLOTS = 256;
+
+    private static final Map<UUID, Subscription> SUBSCRIPTIONS = new ConcurrentHashMap<>();
+    private static final ApiKeyPool KEYS = new ApiKeyPool(4d);
+    private static final RateMeter REQUEST_RATE = new RateMeter();
+    private static final ResponseCache<CacheKey, LastFmClient.RecentTrack> RESPONSES =
+        new ResponseCache<>(5_000L, CACHE_ENTRIES);
+    private static TimingWheel timers;
+    private static ThreadPoolExecutor pollers;
+    private static volatile long periodMillis = 10_000L;
+    private static volatile long idlePeriodMillis = 30_000L;
+    private static volatile LastFmClient client;
+    // No shared key: polls that have no key of their own are parked until one is set
+    private static boolean paused;
+    private static volatile long lastWarnAt = System.nanoTime() - WARN_INTERVAL_NANOS;
+
+    private LastFmPoller() {}
+
+    /** Applies the HTTP settings (base URL, timeouts) and poll tuning from the config; takes effect for the next poll. */
+    public static synchronized void configure(NowPlayingConfig cfg) {
+        // Most reloads leave the HTTP settings alone: keep the client and its open connections
+        LastFmClient previous = client;
+        if (previous == null || !previous.matches(cfg)) {
+            client = LastFmClient.create(cfg);
+            if (previous != null) previous.shutdown();
+        }
+        periodMillis = Math.max(5_000L, cfg.getPollIntervalSeconds() * 1000L);
+        idlePeriodMillis = Math.max(5_000L, cfg.getIdlePollIntervalSeconds() * 1000L);
+        RESPONSES.setTtlMillis(cfg.getLastfmCacheTtlSeconds() * 1000L);
+        TrackMetadataCache.configure(cfg);
+        KEYS.setPermitsPerSecond(cfg.getLastfmRequestsPerSecond());
+        KEYS.setExtra(ApiKeyPool.parse(cfg.getLastfmExtraApiKeys()));
+        keysChanged();
+    }
+
+    /**
+     * Starts the poll timers and subscribes {@code username} for {@link NowPlayingService#LOCAL}; later calls do
+     * nothing, use {@link #configure}, {@link #updateApiKey} and {@link #updateUsername} to change what it does.
+     * Without any shared API key polling starts paused.
+     */
+    public static synchronized void start(String apiKey, String username, Duration period) {
+        Objects.requireNonNull(username, "username");
+        if (timers != null) return;
+        KEYS.setPrimary(apiKey);
+        periodMillis = Math.max(5_000L, period.toMillis());
+        AtomicInteger threadId = new AtomicInteger();
+        pollers = new ThreadPoolExecutor(POLL_THREADS, POLL_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "lastfm-poller-" + threadId.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        // 50 ms ticks, 256 slots: level 0 alone spans 12.8 s, which covers every regular poll delay
+        timers = new TimingWheel(TIMER_TICK_MILLIS, TIMER_SLOTS, pollers, "lastfm-poller-timer");
+        TimingWheel w = timers;
+        ThreadPoolExecutor p = pollers;
+        NowPlayingMetrics.gauge("nowplaying_poller_queue_depth", "gauge", "Polls scheduled or waiting for a thread",
+            () -> w.size() + p.getQueue().size());
+        NowPlayingMetrics.gauge("nowplaying_poller_subscriptions", "gauge", "Last.fm users being polled",
+            SUBSCRIPTIONS::size);
+        NowPlayingMetrics.gauge("nowplaying_lastfm_cache_hits_total", "counter", "Polls answered from the response cache",
+            RESPONSES::hits);
+        NowPlayingMetrics.gauge("nowplaying_lastfm_cache_misses_total", "counter", "Polls that went out to Last.fm",
+            RESPONSES::misses);
+        NowPlayingMetrics.gauge("nowplaying_lastfm_keys_needed", "gauge",
+            "Shared API keys needed for the current poll rate of players without their own key",
+            LastFmPoller::getKeysNeeded);
+        NowPlayingMetrics.gauge("nowplaying_lastfm_key_requests_total", "counter", "Last.fm requests per API key",
+            "key", () -> keyUsage(KeyUsage::requests));
+        NowPlayingMetrics.gauge("nowplaying_lastfm_key_requests_per_minute", "gauge",
+            "Last.fm requests per API key over the last minute", "key",
+            () -> keyUsage(u -> Math.round(u.perSecond() * 60d)));
+        NowPlayingMetrics.gauge("nowplaying_lastfm_key_rate_limited_total", "counter",
+            "Rate-limit answers per API key", "key", () -> keyUsage(KeyUsage::rateLimited));
+        NowPlayingMetrics.gauge("nowplaying_lastfm_key_quarantined_seconds", "gauge",
+            "How much longer an API key is passed over after Last.fm rejected or rate-limited it", "key",
+            () -> keyUsage(u -> u.quarantinedMillis() / 1000L));
+        // Players may have joined before the poller started
+        SUBSCRIPTIONS.values().forEach(LastFmPoller::schedule);
+        subscribe(NowPlayingService.LOCAL, username);
+        if (KEYS.sharedCount() == 0) {
+            paused = true;
+            LOGGER.warn("LASTFM polling paused: missing API key.");
+        } else {
+            LOGGER.info("Last.fm polling started for user '{}'", username);
+        }
+    }
+
+    /**
+     * Starts (or retargets) polling for the given key. Blank usernames unsubscribe the key.
+     */
+    public static synchronized void subscribe(UUID key, String username) {
+        Objects.requireNonNull(key, "key");
+        if (username == null || username.isBlank()) {
+            unsubscribe(key);
+            return;
+        }
+        Subscription existing = SUBSCRIPTIONS.get(key);
+        if (existing != null) {
+            existing.username = username.trim();
+            return;
+        }
+        Subscription sub = new Subscription(key, username.trim());
+        SUBSCRIPTIONS.put(key, sub);
+        schedule(sub);
+    }
+
+    public static synchronized void unsubscribe(UUID key) {
+        Subscription sub = SUBSCRIPTIONS.remove(key);
+        if (sub != null && sub.timer != null) {
+            sub.timer.cancel();
+        }
+    }
+
+    public static int getSubscriptionCount() {
+        return SUBSCRIPTIONS.size();
+    }
+
+    /** Requests per second actually sent to Last.fm, averaged over the last minute. */
+    public static double getEffectiveRate() {
+        return REQUEST_RATE.perSecond();
+    }
+
+    /** Configured request budget per API key, in requests per second. */
+    public static double getRateLimit() {
+        return KEYS.getPermitsPerSecond();
+    }
+
+    /** Traffic per API key: the shared keys first, then players' own keys that were used in the last minute. */
+    public static List<KeyUsage> getKeyUsage() {
+        return KEYS.usage();
+    }
+
+    /**
+     * Requests per second that the players without a usable key of their own ask of the shared keys at their current
+     * poll intervals; an upper bound, since players following the same Last.fm account share responses.
+     */
+    public static double getSharedDemand() {
+        double demand = 0d;
+        for (Subscription sub : SUBSCRIPTIONS.values()) {
+            long interval = sub.intervalMillis;
+            if (sub.sharedBudget && interval > 0) demand += 1000d / interval;
+        }
+        return demand;
+    }
+
+    /** Shared keys it takes to serve {@link #getSharedDemand()} within the per-key budget. */
+    public static int getKeysNeeded() {
+        return (int) Math.ceil(getSharedDemand() / KEYS.getPermitsPerSecond());
+    }
+
+    /** Polls answered from the shared response cache (including joins on an in-flight request). */
+    public static long getCacheHits() {
+        return RESPONSES.hits();
+    }
+
+    /** Polls that had to go out to Last.fm. */
+    public static long getCacheMisses() {
+        return RESPONSES.misses();
+    }
+
+    public static void updateUsername(String username) {
+        if (username == null || username.isBlank()) return;
+        subscribe(NowPlayingService.LOCAL, username);
+    }
+
+    /**
+     * Replaces the primary shared key; the extra keys from the config stay. A blank key removes it, which pauses
+     * polling for everyone without a key of their own if no extra key is left.
+     */
+    public static synchronized void updateApiKey(String apiKey) {
+        KEYS.setPrimary(apiKey);
+        keysChanged();
+    }
+
+    /** Polls {@code key} again if it was paused for want of an API key, e.g. once the player has set their own. */
+    public static synchronized void resume(UUID key) {
+        Subscription sub = SUBSCRIPTIONS.get(key);
+        if (sub != null && sub.parked) {
+            sub.parked = false;
+            schedule(sub);
+        }
+    }
+
+    // Pauses when the last shared key goes, and picks the parked polls up again when one comes back
+    private static synchronized void keysChanged() {
+        if (timers == null) return;
+        if (KEYS.sharedCount() == 0) {
+            if (!paused) LOGGER.warn("Last.fm polling paused: no API key left");
+            paused = true;
+            return;
+        }
+        if (paused) LOGGER.info("Last.fm polling resumed");
+        paused = false;
+        for (Subscription sub : SUBSCRIPTIONS.values()) {
+            if (sub.parked) {
+                sub.parked = false;
+                schedule(sub);
+            }
+        }
+    }
+
+    // No key to poll with at all: the chain stops here until keysChanged() or resume() restarts it
+    private static synchronized void park(Subscription sub) {
+        if (KEYS.sharedCount() > 0) {
+            // A key came in since the permit was refused
+            reschedule(sub, periodMillis);
+        } else {
+            sub.parked = true;
+        }
+    }
+
+    private static void schedule(Subscription sub) {
+        if (timers == null) return;
+        // Derive a stable offset from the key so subscriptions land evenly across the period
+        long offset = Math.floorMod(sub.key.hashCode(), periodMillis);
+        reschedule(sub, 2_000L + offset);
+    }
+
+    private static void reschedule(Subscription sub, long delayMillis) {
+        TimingWheel w = timers;
+        if (w == null || SUBSCRIPTIONS.get(sub.key) != sub) return;
+        sub.timer = w.schedule(() -> pollCurrent(sub), delayMillis, TimeUnit.MILLISECONDS);
+        // Lost a race with unsubscribe(): make sure the chain stops here
+        if (SUBSCRIPTIONS.get(sub.key) != sub) sub.timer.cancel();
+    }
+
+    private static void pollCurrent(Subscription sub) {
+        String username = sub.username;
+        if (username == null || username.isBlank()) {
+            reschedule(sub, periodMillis);
+            return;
+        }
+        CacheKey cacheKey = new CacheKey("user.getrecenttracks", username.toLowerCase(Locale.ROOT));
+        CompletableFuture<LastFmClient.RecentTrack> response = RESPONSES.getIfPresent(cacheKey);
+        String apiKey = null;
+        if (response == null) {
+            // A player's own key spares the shared ones; while Last.fm has it quarantined the shared ones stand in,
+            // and without any the poll waits for the quarantine to end
+            String ownKey = ownKey(sub);
+            boolean useOwn = !ownKey.isEmpty() && (KEYS.isAvailable(ownKey) || KEYS.sharedCount() == 0);
+            sub.sharedBudget = !useOwn;
+            ApiKeyPool.Permit permit = useOwn ? KEYS.acquire(ownKey) : KEYS.acquire();
+            if (permit == ApiKeyPool.Permit.NO_KEY) {
+                park(sub);
+                return;
+            }
+            if (!permit.granted()) {
+                // Out of budget: retry once a token is due, jittered so waiting polls don't line up again
+                long waitMillis = Math.min(MAX_BACKOFF_MILLIS, TimeUnit.NANOSECONDS.toMillis(permit.waitNanos()) + 1);
+                reschedule(sub, waitMillis + ThreadLocalRandom.current().nextLong(250L));
+                return;
+            }
+            apiKey = permit.apiKey();
+            String requestKey = apiKey;
+            response = RESPONSES.get(cacheKey, () -> {
+                REQUEST_RATE.record();
+                return client().recentTrack(requestKey, username);
+            });
+        }
+        String usedKey = apiKey;
+        response.whenComplete((track, error) -> {
+            long delay;
+            if (error != null) {
+                delay = onFailure(sub, unwrap(error), usedKey);
+            } else {
+                delay = onSuccess(sub, track);
+            }
+            sub.intervalMillis = delay;
+            reschedule(sub, delay);
+        });
+    }
+
+    // The player's own key, or empty if they have none
+    private static String ownKey(Subscription sub) {
+        return NowPlayingService.LOCAL.equals(sub.key) ? "" : PlayerConfigStore.getLastfmApiKey(sub.key);
+    }
+
+    private static long onSuccess(Subscription sub, LastFmClient.RecentTrack track) {
+        sub.failures = 0;
+        Scrobbler.reportedByLastFm(sub.key, track);
+        long now = System.currentTimeMillis();
+        if (track == null || !track.nowPlaying()) {
+            if (track != null && !track.title().isBlank()) {
+                NowPlayingService.update(sub.key, track.title(), track.artist(), "Last.fm");
+            }
+            return idlePeriodMillis;
+        }
+        String trackId = track.artist() + '\u0000' + track.title();
+        if (!trackId.equals(sub.lastTrackId)) {
+            sub.lastTrackId = trackId;
+            sub.boostUntil = now + BOOST_WINDOW_MILLIS;
+        }
+        NowPlayingService.update(sub.key, track.title(), track.artist(), "Last.fm");
+        long period = periodMillis;
+        return now < sub.boostUntil ? Math.max(2_000L, period / 2) : period;
+    }
+
+    // apiKey is null when the failed response was shared from the cache; whoever sent it reported the key
+    private static long onFailure(Subscription sub, Throwable error, String apiKey) {
+        int failures = ++sub.failures;
+        KEYS.failed(apiKey, error);
+        long now = System.nanoTime();
+        if (now - lastWarnAt > WARN_INTERVAL_NANOS) {
+            lastWarnAt = now;
+            LOGGER.warn("Last.fm poll for '{}' failed ({} in a row): {}", sub.username, failures, error.toString());
+        } else {
+            LOGGER.debug("Last.fm poll for '{}' failed: {}", sub.username, error.toString());
+        }
+        // Exponential backoff with "equal jitter": half fixed, half random
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, periodMillis << Math.min(failures, 5));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    static Throwable unwrap(Throwable error) {
+        Throwable t = error;
+        while ((t instanceof CompletionException || t instanceof java.io.UncheckedIOException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    /** The primary API key, the one {@code lastfm_api_secret} belongs to; null before {@link #start}. */
+    static String apiKey() {
+        return KEYS.primary();
+    }
+
+    /** Takes one request for a call outside the poll loop from the shared key with the most budget left. */
+    static ApiKeyPool.Permit acquire() {
+        ApiKeyPool.Permit permit = KEYS.acquire();
+        if (permit.granted()) REQUEST_RATE.record();
+        return permit;
+    }
+
+    /**
+     * Takes one request from the budget of {@code apiKey} for a call outside the poll loop;
+     * returns 0 on success, otherwise the nanoseconds until one is available.
+     */
+    static long acquire(String apiKey) {
+        long waitNanos = KEYS.acquire(apiKey).waitNanos();
+        if (waitNanos == 0) REQUEST_RATE.record();
+        return waitNanos;
+    }
+
+    /** Reports a failed call made outside the poll loop; rejected or rate-limited keys are quarantined. */
+    static void reportError(String apiKey, Throwable error) {
+        KEYS.failed(apiKey, error);
+    }
+
+    private static Map<String, Long> keyUsage(ToLongFunction<KeyUsage> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (KeyUsage u : KEYS.usage()) values.put(u.maskedKey(), value.applyAsLong(u));
+        return values;
+    }
+
+    static LastFmClient client() {
+        LastFmClient c = client;
+        if (c == null) {
+            synchronized (LastFmPoller.class) {
+                if (client == null) client = LastFmClient.create(new NowPlayingConfig());
+                c = client;
+            }
+        }
+        return c;
+    }
+
+    private record CacheKey(String method, String user) {}
+
+    /**
+     * One API key's traffic: requests sent (in total and per second over the last minute), rate-limit answers, and
+     * how much longer it is quarantined. Keys are masked to their last four characters.
+     */
+    public record KeyUsage(String maskedKey, boolean shared, long requests, double perSecond, long rateLimited,
+                           long quarantinedMillis) {}
+
+    /** One polled user; the username may be retargeted in place without rescheduling. */
+    private static final class Subscription {
+        final UUID key;
+        volatile String username;
+        volatile TimingWheel.Timeout timer;
+        // Guarded by the class lock
+        boolean parked;
+        // Written by the poll chain, read by the demand estimate
+        volatile boolean sharedBudget = true;
+        volatile long intervalMillis;
+        // Only touched from the poll chain, which runs one step at a time
+        int failures;
+        String lastTrackId;
+        long boostUntil;
+
+        Subscription(UUID key, String username) {
+            this.key = key;
+            this.username = username;
+        }
+    }
+}
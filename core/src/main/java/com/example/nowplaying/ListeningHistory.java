@@ -0,0 +1,89 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Every track change recorded as a play, kept on disk under {@code youtube-music-nowplaying/history} in the config
+ * directory (see {@link HistoryLog}), for {@code /np history} and the weekly top artists. Plays are written behind
+ * a few seconds after they happen and on {@link #flush()}.
+ */
+public final class ListeningHistory {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final long FLUSH_DELAY_SECONDS = 5;
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static final AtomicBoolean FLUSH_SCHEDULED = new AtomicBoolean();
+    private static volatile HistoryLog log;
+    private static ScheduledExecutorService flusher;
+
+    private ListeningHistory() {}
+
+    /** Opens the log (if {@code listening_history} is on) and starts recording; later calls do nothing. */
+    static void configure(NowPlayingConfig cfg) throws IOException {
+        if (!cfg.isListeningHistory() || !STARTED.compareAndSet(false, true)) return;
+        log = new HistoryLog(NowPlayingConfig.dataDir().resolve("history"));
+        NowPlayingService.addListener(ListeningHistory::onTrackChanged);
+    }
+
+    /** The player's latest plays, newest first. */
+    public static List<Play> recent(UUID player, int limit) {
+        HistoryLog l = log;
+        return l == null ? List.of() : l.recent(player, Math.min(limit, HistoryLog.RECENT_PER_PLAYER));
+    }
+
+    /** Most played artists this week (Monday to Sunday, UTC) for {@code player}, or server-wide if it is null. */
+    public static List<ArtistCount> topArtists(UUID player, int limit) {
+        HistoryLog l = log;
+        return l == null ? List.of() : l.topArtists(player, limit);
+    }
+
+    public static void flush() {
+        HistoryLog l = log;
+        if (l == null) return;
+        try {
+            l.flush();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save listening history", e);
+        }
+    }
+
+    private static void onTrackChanged(UUID key, NowPlayingService.Snapshot previous, NowPlayingService.Snapshot current) {
+        // Metadata arriving for the same track, or the same track moving to another source, is not another play
+        if (current.isEmpty()
+                || previous.title().equals(current.title()) && previous.artist().equals(current.artist())) {
+            return;
+        }
+        log.append(System.currentTimeMillis(), key, current.artist(), current.title());
+        if (FLUSH_SCHEDULED.compareAndSet(false, true)) {
+            flusher().schedule(() -> {
+                FLUSH_SCHEDULED.set(false);
+                flush();
+            }, FLUSH_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService flusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "nowplaying-history");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return flusher;
+    }
+
+    public record Play(Instant playedAt, String artist, String title) {}
+
+    public record ArtistCount(String artist, int plays) {}
+}
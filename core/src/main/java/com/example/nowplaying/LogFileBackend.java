@@ -0,0 +1,200 @@
+package com.example.nowplaying;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * All players in one append-only log file. Each flush appends one record per changed player, and an in-memory
+ * index maps every UUID to its latest record. Once dead records make up more than half of the file it is
+ * compacted into a fresh log that atomically replaces the old one.
+ * <p>
+ * Record layout: {@code int payloadLength, int crc32(payload)}, then the payload
+ * {@code long uuidMsb, long uuidLsb, short count, count x (UTF key, UTF value)}.
+ * A torn or corrupt tail (e.g. after a crash mid-append) is truncated when the log is opened.
+ */
+final class LogFileBackend implements PlayerSettingsBackend {
+    private static final int HEADER_BYTES = 8;
+    private static final int MIN_PAYLOAD_BYTES = 18;
+    private static final long MIN_COMPACT_BYTES = 256 * 1024;
+
+    private final Path file;
+    private final Map<UUID, Location> index = new HashMap<>();
+    private FileChannel channel;
+    private long liveBytes;
+
+    LogFileBackend(Path file) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        open();
+    }
+
+    @Override
+    public synchronized PlayerSettings read(UUID playerUuid) throws IOException {
+        Location loc = index.get(playerUuid);
+        if (loc == null) return PlayerSettings.EMPTY;
+        ByteBuffer buf = ByteBuffer.allocate(loc.length());
+        long pos = loc.offset();
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos + buf.position());
+            if (n < 0) throw new IOException("Player log truncated at " + pos);
+        }
+        return decode(buf.array(), HEADER_BYTES, loc.length() - HEADER_BYTES);
+    }
+
+    @Override
+    public synchronized void write(Map<UUID, PlayerSettings> batch) throws IOException {
+        if (batch.isEmpty()) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() * 64);
+        Map<UUID, Location> appended = new HashMap<>();
+        long base = channel.size();
+        for (Map.Entry<UUID, PlayerSettings> e : batch.entrySet()) {
+            int start = bytes.size();
+            writeRecord(bytes, e.getKey(), e.getValue());
+            appended.put(e.getKey(), new Location(base + start, bytes.size() - start));
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+        long pos = base;
+        try {
+            while (buf.hasRemaining()) {
+                pos += channel.write(buf, pos);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // Cut the partial batch back off: the retry appends after it, and scan() would stop at the torn bytes
+            // on the next open and drop the retry along with everything written after it
+            try {
+                channel.truncate(base);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        appended.forEach(this::index);
+        long size = channel.size();
+        if (size > MIN_COMPACT_BYTES && size > liveBytes * 2) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.clear();
+        liveBytes = 0;
+        long end = scan();
+        if (end < channel.size()) {
+            channel.truncate(end);
+            channel.force(false);
+        }
+    }
+
+    // Rebuilds the index in one pass over the file; returns the end of the last intact record.
+    // Read into the heap rather than mapped: a live mapping would block truncate/rename on Windows.
+    private long scan() throws IOException {
+        long size = channel.size();
+        if (size == 0) return 0;
+        if (size > Integer.MAX_VALUE) throw new IOException("Player log too large: " + size);
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, buf.position()) < 0) break;
+        }
+        buf.flip();
+        CRC32 crc = new CRC32();
+        int pos = 0;
+        while (buf.limit() - pos >= HEADER_BYTES) {
+            int length = buf.getInt(pos);
+            int checksum = buf.getInt(pos + 4);
+            if (length < MIN_PAYLOAD_BYTES || length > buf.limit() - pos - HEADER_BYTES) break;
+            crc.reset();
+            crc.update(buf.slice(pos + HEADER_BYTES, length));
+            if ((int) crc.getValue() != checksum) break;
+            UUID id = new UUID(buf.getLong(pos + HEADER_BYTES), buf.getLong(pos + HEADER_BYTES + 8));
+            index(id, new Location(pos, HEADER_BYTES + length));
+            pos += HEADER_BYTES + length;
+        }
+        return pos;
+    }
+
+    private void index(UUID id, Location loc) {
+        Location previous = index.put(id, loc);
+        if (previous != null) liveBytes -= previous.length();
+        liveBytes += loc.length();
+    }
+
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            for (Location loc : index.values()) {
+                channel.transferTo(loc.offset(), loc.length(), out);
+            }
+            out.force(false);
+        }
+        // Closed for the move (Windows cannot replace an open file), then reopened whichever file ends up there
+        channel.close();
+        try {
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+            open();
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream bytes, UUID id, PlayerSettings settings) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+        Properties p = settings.toProperties();
+        out.writeShort(p.size());
+        for (String key : p.stringPropertyNames()) {
+            out.writeUTF(key);
+            out.writeUTF(p.getProperty(key));
+        }
+        out.flush();
+        byte[] data = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(data.length);
+        header.writeInt((int) crc.getValue());
+        header.write(data);
+        header.flush();
+    }
+
+    private static PlayerSettings decode(byte[] data, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+        in.skipNBytes(16);
+        int count = in.readUnsignedShort();
+        Properties p = new Properties();
+        for (int i = 0; i < count; i++) {
+            p.setProperty(in.readUTF(), in.readUTF());
+        }
+        return PlayerSettings.of(p);
+    }
+
+    private record Location(long offset, int length) {}
+}
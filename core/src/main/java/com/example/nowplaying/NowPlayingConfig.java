@@ -0,0 +1,453 @@
+package com.example.nowplaying;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * All engine settings, read from {@code youtube-music-nowplaying.properties} in the config directory. The engine
+ * shares one instance through {@link ConfigManager}, {@link #freeze() frozen} so nobody can change it under the
+ * components that read it; edit a {@link #copy()} instead.
+ */
+public final class NowPlayingConfig {
+    private static final String FILE_NAME = "youtube-music-nowplaying.properties";
+    private static final String DATA_DIR = "youtube-music-nowplaying";
+
+    // Relative to the working directory, which is also where Fabric puts "config" unless told otherwise
+    private static volatile ConfigDirProvider configDirProvider = () -> Path.of("config");
+
+    private String lastfmUsername = "upsetsummer";
+    private String lastfmApiKey = ""; // optional; can come from env/props
+    private String lastfmExtraApiKeys = "";
+    private String lastfmApiSecret = ""; // only needed for scrobbling
+    private String lastfmSessionKey = "";
+    private String lastfmApiUrl = LastFmClient.DEFAULT_BASE_URL;
+    private int lastfmTimeoutMs = 5000;
+    private double lastfmRequestsPerSecond = 4d; // Last.fm allows ~5/s per key averaged over 5 minutes
+    private int lastfmCacheTtlSeconds = 5;
+    private int trackMetadataCacheSize = 2048; // 0 turns enrichment off
+    private int pollIntervalSeconds = 10;
+    private int idlePollIntervalSeconds = 30;
+    private String playerStore = "files"; // "files" or "log"
+    private String httpExecutor = "virtual"; // "virtual", "pool" or "single"
+    private int httpPoolThreads = 4;
+    private int httpQueueCapacity = 64;
+    private int httpBacklog = 64;
+    private int httpKeepAliveSeconds = 30;
+    private String sourcePriority = ""; // comma-separated, highest first
+    private int broadcastPlayerIntervalSeconds = 60;
+    private int broadcastMessagesPerMinute = 20;
+    private String nowPlayingFormat = FormatTemplate.DEFAULT;
+    private boolean listeningHistory = true;
+    private int httpPort = NowPlayingEngine.DEFAULT_PORT;
+    private boolean frozen;
+
+    public String getLastfmUsername() {
+        return lastfmUsername;
+    }
+
+    public void setLastfmUsername(String lastfmUsername) {
+        checkMutable();
+        this.lastfmUsername = lastfmUsername == null ? "" : lastfmUsername.trim();
+    }
+
+    public String getLastfmApiKey() {
+        return lastfmApiKey;
+    }
+
+    public void setLastfmApiKey(String lastfmApiKey) {
+        checkMutable();
+        this.lastfmApiKey = lastfmApiKey == null ? "" : lastfmApiKey.trim();
+    }
+
+    /** More keys polls are spread across, comma separated; scrobbles always use {@code lastfm_api_key}. */
+    public String getLastfmExtraApiKeys() {
+        return lastfmExtraApiKeys;
+    }
+
+    public void setLastfmExtraApiKeys(String lastfmExtraApiKeys) {
+        checkMutable();
+        this.lastfmExtraApiKeys = lastfmExtraApiKeys == null ? "" : lastfmExtraApiKeys.trim();
+    }
+
+    public String getLastfmApiSecret() {
+        return lastfmApiSecret;
+    }
+
+    public void setLastfmApiSecret(String lastfmApiSecret) {
+        checkMutable();
+        this.lastfmApiSecret = lastfmApiSecret == null ? "" : lastfmApiSecret.trim();
+    }
+
+    public String getLastfmSessionKey() {
+        return lastfmSessionKey;
+    }
+
+    public void setLastfmSessionKey(String lastfmSessionKey) {
+        checkMutable();
+        this.lastfmSessionKey = lastfmSessionKey == null ? "" : lastfmSessionKey.trim();
+    }
+
+    public String getLastfmApiUrl() {
+        return lastfmApiUrl;
+    }
+
+    public void setLastfmApiUrl(String lastfmApiUrl) {
+        checkMutable();
+        this.lastfmApiUrl = lastfmApiUrl == null || lastfmApiUrl.isBlank() ? LastFmClient.DEFAULT_BASE_URL : lastfmApiUrl.trim();
+    }
+
+    public int getLastfmTimeoutMs() {
+        return lastfmTimeoutMs;
+    }
+
+    public void setLastfmTimeoutMs(int lastfmTimeoutMs) {
+        checkMutable();
+        this.lastfmTimeoutMs = Math.max(500, lastfmTimeoutMs);
+    }
+
+    public double getLastfmRequestsPerSecond() {
+        return lastfmRequestsPerSecond;
+    }
+
+    public void setLastfmRequestsPerSecond(double lastfmRequestsPerSecond) {
+        checkMutable();
+        this.lastfmRequestsPerSecond = lastfmRequestsPerSecond > 0 ? lastfmRequestsPerSecond : 4d;
+    }
+
+    public int getLastfmCacheTtlSeconds() {
+        return lastfmCacheTtlSeconds;
+    }
+
+    public void setLastfmCacheTtlSeconds(int lastfmCacheTtlSeconds) {
+        checkMutable();
+        this.lastfmCacheTtlSeconds = Math.max(0, lastfmCacheTtlSeconds);
+    }
+
+    public int getTrackMetadataCacheSize() {
+        return trackMetadataCacheSize;
+    }
+
+    public void setTrackMetadataCacheSize(int trackMetadataCacheSize) {
+        checkMutable();
+        this.trackMetadataCacheSize = Math.max(0, trackMetadataCacheSize);
+    }
+
+    public int getPollIntervalSeconds() {
+        return pollIntervalSeconds;
+    }
+
+    public void setPollIntervalSeconds(int pollIntervalSeconds) {
+        checkMutable();
+        this.pollIntervalSeconds = Math.max(5, pollIntervalSeconds);
+    }
+
+    public int getIdlePollIntervalSeconds() {
+        return idlePollIntervalSeconds;
+    }
+
+    public void setIdlePollIntervalSeconds(int idlePollIntervalSeconds) {
+        checkMutable();
+        this.idlePollIntervalSeconds = Math.max(5, idlePollIntervalSeconds);
+    }
+
+    public String getPlayerStore() {
+        return playerStore;
+    }
+
+    public void setPlayerStore(String playerStore) {
+        checkMutable();
+        this.playerStore = playerStore == null ? "files" : playerStore.trim().toLowerCase(java.util.Locale.ROOT);
+    }
+
+    public String getHttpExecutor() {
+        return httpExecutor;
+    }
+
+    public void setHttpExecutor(String httpExecutor) {
+        checkMutable();
+        this.httpExecutor = httpExecutor == null ? "virtual" : httpExecutor.trim().toLowerCase(java.util.Locale.ROOT);
+    }
+
+    public int getHttpPoolThreads() {
+        return httpPoolThreads;
+    }
+
+    public void setHttpPoolThreads(int httpPoolThreads) {
+        checkMutable();
+        this.httpPoolThreads = Math.max(1, httpPoolThreads);
+    }
+
+    public int getHttpQueueCapacity() {
+        return httpQueueCapacity;
+    }
+
+    public void setHttpQueueCapacity(int httpQueueCapacity) {
+        checkMutable();
+        this.httpQueueCapacity = Math.max(1, httpQueueCapacity);
+    }
+
+    public int getHttpBacklog() {
+        return httpBacklog;
+    }
+
+    public void setHttpBacklog(int httpBacklog) {
+        checkMutable();
+        this.httpBacklog = Math.max(0, httpBacklog);
+    }
+
+    public int getHttpKeepAliveSeconds() {
+        return httpKeepAliveSeconds;
+    }
+
+    public void setHttpKeepAliveSeconds(int httpKeepAliveSeconds) {
+        checkMutable();
+        this.httpKeepAliveSeconds = Math.max(1, httpKeepAliveSeconds);
+    }
+
+    public String getSourcePriority() {
+        return sourcePriority;
+    }
+
+    public void setSourcePriority(String sourcePriority) {
+        checkMutable();
+        this.sourcePriority = sourcePriority == null ? "" : sourcePriority.trim();
+    }
+
+    public int getBroadcastPlayerIntervalSeconds() {
+        return broadcastPlayerIntervalSeconds;
+    }
+
+    public void setBroadcastPlayerIntervalSeconds(int broadcastPlayerIntervalSeconds) {
+        checkMutable();
+        this.broadcastPlayerIntervalSeconds = Math.max(0, broadcastPlayerIntervalSeconds);
+    }
+
+    public int getBroadcastMessagesPerMinute() {
+        return broadcastMessagesPerMinute;
+    }
+
+    public void setBroadcastMessagesPerMinute(int broadcastMessagesPerMinute) {
+        checkMutable();
+        this.broadcastMessagesPerMinute = Math.max(1, broadcastMessagesPerMinute);
+    }
+
+    public String getNowPlayingFormat() {
+        return nowPlayingFormat;
+    }
+
+    public void setNowPlayingFormat(String nowPlayingFormat) {
+        checkMutable();
+        this.nowPlayingFormat = nowPlayingFormat == null || nowPlayingFormat.isBlank() ? FormatTemplate.DEFAULT : nowPlayingFormat;
+    }
+
+    public boolean isListeningHistory() {
+        return listeningHistory;
+    }
+
+    public void setListeningHistory(boolean listeningHistory) {
+        checkMutable();
+        this.listeningHistory = listeningHistory;
+    }
+
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    public void setHttpPort(int httpPort) {
+        checkMutable();
+        this.httpPort = httpPort > 0 && httpPort <= 65535 ? httpPort : NowPlayingEngine.DEFAULT_PORT;
+    }
+
+    /** Makes this instance read-only; setters throw from now on. */
+    public NowPlayingConfig freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /** A mutable copy with the same settings. */
+    public NowPlayingConfig copy() {
+        return fromProperties(toProperties());
+    }
+
+    /** Whether {@code other} holds exactly the same settings. */
+    public boolean sameSettings(NowPlayingConfig other) {
+        return other != null && toProperties().equals(other.toProperties());
+    }
+
+    /** Sets where the config file and the data directory live; call before anything is loaded. */
+    public static void setConfigDirProvider(ConfigDirProvider provider) {
+        configDirProvider = Objects.requireNonNull(provider, "provider");
+    }
+
+    /** The directory holding the per-player store, caches and other engine data. */
+    static Path dataDir() {
+        return configDirProvider.configDir().resolve(DATA_DIR);
+    }
+
+    /** Reads the config file; anything missing or unreadable keeps its default. */
+    public static NowPlayingConfig load() {
+        try {
+            return read();
+        } catch (IOException e) {
+            return new NowPlayingConfig();
+        }
+    }
+
+    // Like load(), but a file that exists and cannot be read is an error rather than a reset to defaults
+    static NowPlayingConfig read() throws IOException {
+        return fromProperties(readProperties());
+    }
+
+    /**
+     * Like {@link #read()}, for reloading a file that may be mid-write: settings it leaves out keep their defaults,
+     * as on startup, but a file with no settings at all (just truncated by an editor) or a number that does not
+     * parse is an error rather than a reset to defaults.
+     */
+    static NowPlayingConfig readStrict() throws IOException {
+        Properties p = readProperties();
+        if (p.isEmpty()) throw new IOException("Config file has no settings");
+        Properties defaults = new NowPlayingConfig().toProperties();
+        for (String key : p.stringPropertyNames()) {
+            String fallback = defaults.getProperty(key);
+            String value = p.getProperty(key);
+            if (fallback != null && isNumber(fallback) && !isNumber(value)) {
+                throw new IOException("Config file has a malformed " + key + ": " + value);
+            }
+        }
+        return fromProperties(p);
+    }
+
+    private static Properties readProperties() throws IOException {
+        Path path = configPath();
+        Properties p = new Properties();
+        if (Files.exists(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                p.load(in);
+            }
+        }
+        return p;
+    }
+
+    private static NowPlayingConfig fromProperties(Properties p) {
+        NowPlayingConfig cfg = new NowPlayingConfig();
+        cfg.lastfmUsername = p.getProperty("lastfm_username", cfg.lastfmUsername).trim();
+        cfg.lastfmApiKey = p.getProperty("lastfm_api_key", cfg.lastfmApiKey).trim();
+        cfg.setLastfmExtraApiKeys(p.getProperty("lastfm_extra_api_keys", cfg.lastfmExtraApiKeys));
+        cfg.setLastfmApiSecret(p.getProperty("lastfm_api_secret", cfg.lastfmApiSecret));
+        cfg.setLastfmSessionKey(p.getProperty("lastfm_session_key", cfg.lastfmSessionKey));
+        cfg.setLastfmApiUrl(p.getProperty("lastfm_api_url", cfg.lastfmApiUrl));
+        cfg.setLastfmTimeoutMs(intProperty(p, "lastfm_timeout_ms", cfg.lastfmTimeoutMs));
+        cfg.setLastfmRequestsPerSecond(doubleProperty(p, "lastfm_requests_per_second", cfg.lastfmRequestsPerSecond));
+        cfg.setLastfmCacheTtlSeconds(intProperty(p, "lastfm_cache_ttl_seconds", cfg.lastfmCacheTtlSeconds));
+        cfg.setTrackMetadataCacheSize(intProperty(p, "track_metadata_cache_size", cfg.trackMetadataCacheSize));
+        cfg.setPollIntervalSeconds(intProperty(p, "poll_interval_seconds", cfg.pollIntervalSeconds));
+        cfg.setIdlePollIntervalSeconds(intProperty(p, "idle_poll_interval_seconds", cfg.idlePollIntervalSeconds));
+        cfg.setPlayerStore(p.getProperty("player_store", cfg.playerStore));
+        cfg.setHttpExecutor(p.getProperty("http_executor", cfg.httpExecutor));
+        cfg.setHttpPoolThreads(intProperty(p, "http_pool_threads", cfg.httpPoolThreads));
+        cfg.setHttpQueueCapacity(intProperty(p, "http_queue_capacity", cfg.httpQueueCapacity));
+        cfg.setHttpBacklog(intProperty(p, "http_backlog", cfg.httpBacklog));
+        cfg.setHttpKeepAliveSeconds(intProperty(p, "http_keepalive_seconds", cfg.httpKeepAliveSeconds));
+        cfg.setSourcePriority(p.getProperty("source_priority", cfg.sourcePriority));
+        cfg.setBroadcastPlayerIntervalSeconds(
+            intProperty(p, "broadcast_player_interval_seconds", cfg.broadcastPlayerIntervalSeconds));
+        cfg.setBroadcastMessagesPerMinute(
+            intProperty(p, "broadcast_messages_per_minute", cfg.broadcastMessagesPerMinute));
+        cfg.setNowPlayingFormat(p.getProperty("now_playing_format", cfg.nowPlayingFormat));
+        cfg.setListeningHistory(Boolean.parseBoolean(
+            p.getProperty("listening_history", String.valueOf(cfg.listeningHistory)).trim()));
+        cfg.setHttpPort(intProperty(p, "http_port", cfg.httpPort));
+        return cfg;
+    }
+
+    /** Writes the config file; it is replaced in one move, so readers never see it half-written. */
+    public void save() throws IOException {
+        Properties p = toProperties();
+        Path path = configPath();
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            p.store(out, "YouTube Music Now Playing config");
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Properties toProperties() {
+        Properties p = new Properties();
+        p.setProperty("lastfm_username", String.valueOf(lastfmUsername));
+        p.setProperty("lastfm_api_key", String.valueOf(lastfmApiKey));
+        p.setProperty("lastfm_extra_api_keys", lastfmExtraApiKeys);
+        p.setProperty("lastfm_api_secret", lastfmApiSecret);
+        p.setProperty("lastfm_session_key", lastfmSessionKey);
+        p.setProperty("lastfm_api_url", lastfmApiUrl);
+        p.setProperty("lastfm_timeout_ms", String.valueOf(lastfmTimeoutMs));
+        p.setProperty("lastfm_requests_per_second", String.valueOf(lastfmRequestsPerSecond));
+        p.setProperty("lastfm_cache_ttl_seconds", String.valueOf(lastfmCacheTtlSeconds));
+        p.setProperty("track_metadata_cache_size", String.valueOf(trackMetadataCacheSize));
+        p.setProperty("poll_interval_seconds", String.valueOf(pollIntervalSeconds));
+        p.setProperty("idle_poll_interval_seconds", String.valueOf(idlePollIntervalSeconds));
+        p.setProperty("player_store", playerStore);
+        p.setProperty("http_executor", httpExecutor);
+        p.setProperty("http_pool_threads", String.valueOf(httpPoolThreads));
+        p.setProperty("http_queue_capacity", String.valueOf(httpQueueCapacity));
+        p.setProperty("http_backlog", String.valueOf(httpBacklog));
+        p.setProperty("http_keepalive_seconds", String.valueOf(httpKeepAliveSeconds));
+        p.setProperty("source_priority", sourcePriority);
+        p.setProperty("broadcast_player_interval_seconds", String.valueOf(broadcastPlayerIntervalSeconds));
+        p.setProperty("broadcast_messages_per_minute", String.valueOf(broadcastMessagesPerMinute));
+        p.setProperty("now_playing_format", nowPlayingFormat);
+        p.setProperty("listening_history", String.valueOf(listeningHistory));
+        p.setProperty("http_port", String.valueOf(httpPort));
+        return p;
+    }
+
+    private void checkMutable() {
+        if (frozen) throw new IllegalStateException("Config snapshot is read-only; edit a copy()");
+    }
+
+    private static int intProperty(Properties p, String key, int fallback) {
+        try {
+            return Integer.parseInt(p.getProperty(key, String.valueOf(fallback)).trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static double doubleProperty(Properties p, String key, double fallback) {
+        try {
+            return Double.parseDouble(p.getProperty(key, String.valueOf(fallback)).trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    static Path configPath() {
+        return configDirProvider.configDir().resolve(FILE_NAME);
+    }
+}
+
+
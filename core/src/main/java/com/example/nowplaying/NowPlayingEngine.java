@@ -0,0 +1,200 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts and stops the whole engine: player store, listening history, scrobbler, local HTTP server and Last.fm
+ * poller. The Fabric entrypoints and {@link NowPlayingSidecar} are thin adapters around this; set a
+ * {@link ConfigDirProvider} first.
+ * <p>
+ * Startup runs off the calling thread, with the components started in parallel once the config is loaded, and
+ * happens once per process: the client and the integrated server both call {@link #start()} and share the
+ * same engine. The player store also opens itself on first use if a player is looked up before it is ready.
+ * <p>
+ * After startup the engine follows {@link ConfigManager}: every new config snapshot, from a command or an edit to
+ * the file, is applied to the running components, including moving the HTTP server to a new {@code http_port}.
+ */
+public final class NowPlayingEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final List<String> COMPONENTS = List.of("config", "store", "history", "scrobbler", "http", "poller");
+
+    public static final int DEFAULT_PORT = 18080;
+
+    private static CompletableFuture<NowPlayingConfig> started;
+    // Set by start(int): a port given on the command line wins over http_port
+    private static volatile int portOverride;
+
+    private NowPlayingEngine() {}
+
+    /**
+     * Starts the engine in the background, or returns the startup already under way. The future completes with
+     * the loaded config once every component has started or failed; failures are logged, never thrown, and an
+     * HTTP port already taken (e.g. by a sidecar) leaves the rest running.
+     */
+    public static CompletableFuture<NowPlayingConfig> start() {
+        return start(0);
+    }
+
+    /** Like {@link #start()}, but serves HTTP on {@code port} whatever the config says; 0 uses {@code http_port}. */
+    public static synchronized CompletableFuture<NowPlayingConfig> start(int port) {
+        if (started != null) return started;
+        portOverride = port;
+        long begin = System.nanoTime();
+        Map<String, Long> millis = new ConcurrentHashMap<>();
+        // The config loads first; everything else then starts side by side
+        ExecutorService startup = Executors.newFixedThreadPool(4, daemon("nowplaying-startup"));
+        CompletableFuture<NowPlayingConfig> config = CompletableFuture.supplyAsync(() -> {
+            long t = System.nanoTime();
+            NowPlayingConfig cfg = ConfigManager.get();
+            NowPlayingService.setFormat(FormatTemplate.compile(cfg.getNowPlayingFormat()));
+            millis.put("config", elapsedMillis(t));
+            return cfg;
+        }, startup);
+        CompletableFuture<?>[] components = {
+            config.thenAcceptAsync(cfg -> timed(millis, "store", () -> PlayerConfigStore.configure(cfg)), startup),
+            config.thenAcceptAsync(cfg -> timed(millis, "history", () -> ListeningHistory.configure(cfg)), startup),
+            config.thenAcceptAsync(cfg -> timed(millis, "scrobbler", () -> Scrobbler.configure(cfg)), startup),
+            config.thenAcceptAsync(cfg -> timed(millis, "http", () -> startHttp(cfg)), startup),
+            config.thenAcceptAsync(cfg -> timed(millis, "poller", () -> startPoller(cfg)), startup),
+        };
+        started = CompletableFuture.allOf(components)
+            .handle((ignored, error) -> config.isCompletedExceptionally() ? new NowPlayingConfig() : config.join())
+            .whenComplete((cfg, error) -> {
+                startup.shutdown();
+                LOGGER.info("NowPlaying engine started in {} ms ({})", elapsedMillis(begin), report(millis));
+                followConfig(cfg);
+            });
+        return started;
+    }
+
+    /** Persists everything that is written behind; call on shutdown. */
+    public static void flush() {
+        PlayerConfigStore.flush();
+        TrackMetadataCache.flush();
+        ListeningHistory.flush();
+    }
+
+    private static void startHttp(NowPlayingConfig cfg) throws Exception {
+        int port = httpPort(cfg);
+        NowPlayingHttpServer.startIfNotRunning(port, cfg);
+        LOGGER.info("NowPlaying HTTP server started on http://127.0.0.1:{}", port);
+    }
+
+    // Only once every component is up, so no change is applied to one still starting with the old snapshot
+    private static void followConfig(NowPlayingConfig startedWith) {
+        ConfigManager.addListener(NowPlayingEngine::reconfigure);
+        try {
+            ConfigManager.watch();
+        } catch (IOException e) {
+            LOGGER.warn("Not watching the NowPlaying config for changes", e);
+        }
+        // A change published while starting up has not reached the listener; applying it twice is harmless
+        NowPlayingConfig current = ConfigManager.get();
+        if (!current.sameSettings(startedWith)) reconfigure(startedWith, current);
+    }
+
+    // Runs on the config thread for each new snapshot, and once from followConfig; every component skips what did
+    // not change
+    private static synchronized void reconfigure(NowPlayingConfig previous, NowPlayingConfig cfg) {
+        if (!cfg.getNowPlayingFormat().equals(previous.getNowPlayingFormat())) {
+            NowPlayingService.setFormat(FormatTemplate.compile(cfg.getNowPlayingFormat()));
+        }
+        apply("store", () -> PlayerConfigStore.configure(cfg));
+        apply("history", () -> ListeningHistory.configure(cfg));
+        apply("scrobbler", () -> Scrobbler.configure(cfg));
+        apply("http", () -> {
+            int port = httpPort(cfg);
+            NowPlayingHttpServer.reconfigure(port, cfg);
+            if (port != httpPort(previous)) LOGGER.info("NowPlaying HTTP server moved to http://127.0.0.1:{}", port);
+        });
+        apply("poller", () -> {
+            LastFmPoller.configure(cfg);
+            String apiKey = apiKey(cfg);
+            if (!Objects.equals(apiKey, apiKey(previous))) LastFmPoller.updateApiKey(apiKey);
+            String username = username(cfg);
+            if (!Objects.equals(username, username(previous))) LastFmPoller.updateUsername(username);
+        });
+    }
+
+    private static int httpPort(NowPlayingConfig cfg) {
+        int port = portOverride;
+        return port > 0 ? port : cfg.getHttpPort();
+    }
+
+    private static void startPoller(NowPlayingConfig cfg) {
+        LastFmPoller.configure(cfg);
+        LastFmPoller.start(apiKey(cfg), username(cfg), Duration.ofSeconds(cfg.getPollIntervalSeconds()));
+    }
+
+    private static String username(NowPlayingConfig cfg) {
+        return System.getProperty("lastfm_username", cfg.getLastfmUsername());
+    }
+
+    // LASTFM_API_KEY, then -Dlastfm_api_key, then the config file
+    private static String apiKey(NowPlayingConfig cfg) {
+        String apiKey = System.getenv("LASTFM_API_KEY");
+        if (apiKey == null || apiKey.isBlank()) apiKey = System.getProperty("lastfm_api_key", cfg.getLastfmApiKey());
+        return apiKey;
+    }
+
+    private static void apply(String component, Step step) {
+        try {
+            step.run();
+        } catch (Exception e) {
+            LOGGER.error("NowPlaying {} failed to apply the new config", component, e);
+        }
+    }
+
+    private static void timed(Map<String, Long> millis, String component, Step step) {
+        long t = System.nanoTime();
+        try {
+            step.run();
+        } catch (Exception e) {
+            LOGGER.error("NowPlaying {} failed to start", component, e);
+        } finally {
+            millis.put(component, elapsedMillis(t));
+        }
+    }
+
+    // "config 3 ms, store 12 ms, history 20 ms, scrobbler 1 ms, http 41 ms, poller 2 ms"; a component missing here never ran
+    private static String report(Map<String, Long> millis) {
+        StringBuilder sb = new StringBuilder();
+        for (String component : COMPONENTS) {
+            Long ms = millis.get(component);
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(component).append(' ').append(ms == null ? "-" : ms + " ms");
+        }
+        return sb.toString();
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger id = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + id.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,523 @@
+package com.example.nowplaying;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal local HTTP server that accepts now-playing updates.
+ * Endpoints:
+ *   - POST /nowplaying  with JSON {"title":"...","artist":"...","source":"YouTube Music","player":"<uuid>"}
+ *                       and optionally "playing" (default true) and "ts" (client clock, epoch millis)
+ *   - POST /nowplaying/batch  with a JSON array of such objects, applied in order in one request
+ *   - POST /clear       to clear current state
+ *   - GET  /nowplaying  returns JSON of current state; the body is cached per state version and carries an ETag,
+ *                       so a matching If-None-Match is answered with 304 and no body
+ *   - GET  /nowplaying?since=<version>  long poll: waits until the state moves past that version (304 on timeout)
+ *   - GET  /nowplaying/stream  Server-Sent Events, one "nowplaying" event per track change
+ *   - GET  /metrics     Prometheus text format: Last.fm calls, request rates and latencies, queue depths, store I/O
+ * Requests run on virtual threads by default, or on a bounded platform pool ("http_executor=pool") that answers
+ * 503 once its queue is full; "single" runs them all on one thread, as older versions did, and is kept for comparison.
+ * The optional "player" field (or ?player= query parameter) selects the player state; it defaults to the local one.
+ * Updates from different sources are merged by {@link SourceArbiter} rather than overwriting each other.
+ */
+public final class NowPlayingHttpServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final int MAX_ENCODED = 4096;
+    private static final int MAX_BATCH = 64;
+    private static final Encoded EMPTY_ENCODED = Encoded.of(NowPlayingService.Snapshot.EMPTY);
+
+    /** Serialized GET bodies per player, valid as long as the state version matches. */
+    private static final Map<UUID, Encoded> ENCODED = new ConcurrentHashMap<>();
+
+    /** Set on the overflow thread: requests that land there were rejected by the bounded pool. */
+    private static final ThreadLocal<Boolean> SHEDDING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private static volatile HttpServer server;
+    private static int runningPort;
+    private static NowPlayingConfig runningConfig;
+
+    private NowPlayingHttpServer() {}
+
+    public static synchronized void startIfNotRunning(int port) throws IOException {
+        startIfNotRunning(port, new NowPlayingConfig());
+    }
+
+    public static synchronized void startIfNotRunning(int port, NowPlayingConfig cfg) throws IOException {
+        if (server != null) return;
+        SourceArbiter.configure(cfg);
+        tuneKeepAlive(cfg);
+        open(port, cfg);
+    }
+
+    /**
+     * Applies a new config to the running server: source priorities take effect in place, while a new port,
+     * executor or backlog rebuilds the server. A new port is bound before the old one is released, so a port that
+     * is taken leaves the server where it was. Keep-alive is read once per JVM and only changes on a restart.
+     */
+    public static synchronized void reconfigure(int port, NowPlayingConfig cfg) throws IOException {
+        SourceArbiter.configure(cfg);
+        HttpServer previous = server;
+        if (previous == null || port == runningPort && sameServerSettings(runningConfig, cfg)) {
+            runningConfig = cfg;
+            return;
+        }
+        if (port == runningPort) {
+            // Same port: it has to be released before it can be bound again
+            close(previous);
+            server = null;
+            open(port, cfg);
+        } else {
+            open(port, cfg);
+            close(previous);
+        }
+    }
+
+    /** Stops the server, dropping open streams and long polls; a later start may use another port. */
+    public static synchronized void stop() {
+        HttpServer s = server;
+        if (s == null) return;
+        close(s);
+        server = null;
+    }
+
+    private static void open(int port, NowPlayingConfig cfg) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        HttpServer httpServer = HttpServer.create(address, cfg.getHttpBacklog());
+        route(httpServer, "/nowplaying", new NowPlayingHandler());
+        route(httpServer, "/nowplaying/stream", new StreamHandler());
+        route(httpServer, "/nowplaying/batch", new BatchHandler());
+        route(httpServer, "/clear", new ClearHandler());
+        route(httpServer, "/metrics", new MetricsHandler());
+        httpServer.setExecutor(createExecutor(cfg));
+        NowPlayingMetrics.gauge("nowplaying_players", "gauge", "Players with a now playing state", NowPlayingService::size);
+        NowPlayingMetrics.gauge("nowplaying_http_streams_open", "gauge", "Open SSE streams", NowPlayingStreams::openStreams);
+        NowPlayingMetrics.gauge("nowplaying_http_polls_parked", "gauge", "Long polls waiting for a change",
+            NowPlayingStreams::parkedPolls);
+        httpServer.start();
+        server = httpServer;
+        runningPort = port;
+        runningConfig = cfg;
+    }
+
+    private static void close(HttpServer s) {
+        s.stop(0);
+        if (s.getExecutor() instanceof ExecutorService executor) executor.shutdown();
+    }
+
+    private static boolean sameServerSettings(NowPlayingConfig a, NowPlayingConfig b) {
+        return a.getHttpExecutor().equals(b.getHttpExecutor())
+            && a.getHttpPoolThreads() == b.getHttpPoolThreads()
+            && a.getHttpQueueCapacity() == b.getHttpQueueCapacity()
+            && a.getHttpBacklog() == b.getHttpBacklog();
+    }
+
+    // Metrics first, so requests shed with 503 are counted too
+    private static void route(HttpServer httpServer, String path, HttpHandler handler) {
+        HttpContext context = httpServer.createContext(path, handler);
+        context.getFilters().add(new MetricsFilter(path));
+        context.getFilters().add(new SheddingFilter());
+    }
+
+    private static ExecutorService createExecutor(NowPlayingConfig cfg) {
+        if ("single".equals(cfg.getHttpExecutor())) {
+            return Executors.newSingleThreadExecutor(namedDaemon("nowplaying-http"));
+        }
+        if (!"pool".equals(cfg.getHttpExecutor())) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        int threads = cfg.getHttpPoolThreads();
+        // Its thread times out, so a pool left behind by reconfigure() does not keep it around
+        ThreadPoolExecutor overflow = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), namedDaemon("nowplaying-http-shed"));
+        overflow.allowCoreThreadTimeOut(true);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(cfg.getHttpQueueCapacity()), namedDaemon("nowplaying-http"),
+            // Saturated: hand the exchange to a single thread that only answers 503
+            (task, rejectedBy) -> overflow.execute(() -> {
+                SHEDDING.set(Boolean.TRUE);
+                try {
+                    task.run();
+                } finally {
+                    SHEDDING.remove();
+                }
+            }));
+        pool.allowCoreThreadTimeOut(true);
+        NowPlayingMetrics.gauge("nowplaying_http_queue_depth", "gauge", "Requests queued for the HTTP pool",
+            () -> pool.getQueue().size());
+        return pool;
+    }
+
+    private static ThreadFactory namedDaemon(String name) {
+        AtomicInteger id = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + id.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // The JDK server reads these once when its config class initializes, so they must be set before create()
+    private static void tuneKeepAlive(NowPlayingConfig cfg) {
+        if (System.getProperty("sun.net.httpserver.idleInterval") == null) {
+            System.setProperty("sun.net.httpserver.idleInterval", String.valueOf(cfg.getHttpKeepAliveSeconds()));
+        }
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "256");
+        }
+        // Headers and body go out in separate writes; with Nagle on, each response waits ~40 ms for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        LOGGER.debug("NowPlaying HTTP server: executor={}, backlog={}, keep-alive={}s",
+            cfg.getHttpExecutor(), cfg.getHttpBacklog(), cfg.getHttpKeepAliveSeconds());
+    }
+
+    private static final class SheddingFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (SHEDDING.get()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respondJson(exchange, 503, "{\"error\":\"overloaded\"}");
+                return;
+            }
+            chain.doFilter(exchange);
+        }
+
+        @Override
+        public String description() {
+            return "Answers 503 for requests rejected by the bounded executor";
+        }
+    }
+
+    private static final class MetricsFilter extends Filter {
+        private final NowPlayingMetrics.HttpSeries series;
+
+        MetricsFilter(String endpoint) {
+            this.series = NowPlayingMetrics.http(endpoint);
+        }
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            long start = System.nanoTime();
+            try {
+                chain.doFilter(exchange);
+            } finally {
+                series.record(start, exchange.getResponseCode());
+            }
+        }
+
+        @Override
+        public String description() {
+            return "Records request count and latency per endpoint";
+        }
+    }
+
+    private static final class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                respondJson(exchange, 405, "{\"error\":\"method_not_allowed\"}");
+                return;
+            }
+            respond(exchange, 200, "text/plain; version=0.0.4; charset=utf-8",
+                NowPlayingMetrics.scrape().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final class NowPlayingHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String method = exchange.getRequestMethod();
+                if ("POST".equalsIgnoreCase(method)) {
+                    Map<String, String> map;
+                    try (InputStream body = exchange.getRequestBody()) {
+                        map = Json.parseFlatStringMap(body);
+                    } catch (IOException e) {
+                        respondJson(exchange, 400, "{\"error\":\"" + Json.escape(String.valueOf(e.getMessage())) + "\"}");
+                        return;
+                    }
+                    SourceArbiter.apply(List.of(sourceUpdate(map)));
+                    respondJson(exchange, 200, "{\"status\":\"ok\"}");
+                } else if ("GET".equalsIgnoreCase(method) && queryParam(exchange, "since") != null) {
+                    long since;
+                    try {
+                        since = Long.parseLong(queryParam(exchange, "since"));
+                    } catch (NumberFormatException e) {
+                        respondJson(exchange, 400, "{\"error\":\"bad_since\"}");
+                        return;
+                    }
+                    NowPlayingStreams.awaitChange(exchange, playerKey(queryParam(exchange, "player")), since);
+                } else if ("GET".equalsIgnoreCase(method)) {
+                    UUID key = playerKey(queryParam(exchange, "player"));
+                    Encoded body = encoded(key, NowPlayingService.get(key));
+                    exchange.getResponseHeaders().set("ETag", body.etag());
+                    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                    if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), body.etag())) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                    } else {
+                        respond(exchange, 200, JSON_TYPE, body.bytes());
+                    }
+                } else {
+                    respondJson(exchange, 405, "{\"error\":\"method_not_allowed\"}");
+                }
+            } catch (Exception e) {
+                respondJson(exchange, 500, "{\"error\":\"" + Json.escape(String.valueOf(e.getMessage())) + "\"}");
+            }
+        }
+    }
+
+    private static final class BatchHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                respondJson(exchange, 405, "{\"error\":\"method_not_allowed\"}");
+                return;
+            }
+            List<Map<String, String>> items;
+            try (InputStream body = exchange.getRequestBody()) {
+                items = Json.parseFlatStringMaps(body, MAX_BATCH);
+            } catch (IOException e) {
+                respondJson(exchange, 400, "{\"error\":\"" + Json.escape(String.valueOf(e.getMessage())) + "\"}");
+                return;
+            }
+            if (items == null) {
+                respondJson(exchange, 413, "{\"error\":\"batch_too_large\",\"max\":" + MAX_BATCH + "}");
+                return;
+            }
+            List<SourceArbiter.SourceUpdate> updates = new ArrayList<>(items.size());
+            for (Map<String, String> item : items) {
+                updates.add(sourceUpdate(item));
+            }
+            SourceArbiter.apply(updates);
+            respondJson(exchange, 200, "{\"status\":\"ok\",\"applied\":" + updates.size() + "}");
+        }
+    }
+
+    private static final class StreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                respondJson(exchange, 405, "{\"error\":\"method_not_allowed\"}");
+                return;
+            }
+            NowPlayingStreams.openStream(exchange, playerKey(queryParam(exchange, "player")));
+        }
+    }
+
+    private static final class ClearHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                respondJson(exchange, 405, "{\"error\":\"method_not_allowed\"}");
+                return;
+            }
+            UUID key = playerKey(queryParam(exchange, "player"));
+            SourceArbiter.clear(key);
+            NowPlayingService.clear(key);
+            respondJson(exchange, 200, "{\"status\":\"cleared\"}");
+        }
+    }
+
+    private static SourceArbiter.SourceUpdate sourceUpdate(Map<String, String> map) {
+        Long ts = null;
+        try {
+            if (map.get("ts") != null) ts = (long) Double.parseDouble(map.get("ts"));
+        } catch (NumberFormatException ignored) {
+            // Treated as "now"
+        }
+        return SourceArbiter.SourceUpdate.of(playerKey(map.get("player")),
+            map.getOrDefault("source", ""),
+            map.getOrDefault("title", ""),
+            map.getOrDefault("artist", ""),
+            !"false".equals(map.get("playing")),
+            ts);
+    }
+
+    private static UUID playerKey(String value) {
+        if (value == null || value.isBlank()) return NowPlayingService.LOCAL;
+        try {
+            return UUID.fromString(value.trim());
+        } catch (IllegalArgumentException e) {
+            return NowPlayingService.LOCAL;
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            if (k.equals(name)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    static void respondJson(HttpExchange exchange, int status, String body) throws IOException {
+        respond(exchange, status, JSON_TYPE, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void respond(HttpExchange exchange, int status, String contentType, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    static String toJson(NowPlayingService.Snapshot state) {
+        StringBuilder json = new StringBuilder(160)
+            .append("{\"title\":\"").append(Json.escape(state.title()))
+            .append("\",\"artist\":\"").append(Json.escape(state.artist()))
+            .append("\",\"source\":\"").append(Json.escape(state.source()))
+            .append("\",\"version\":").append(state.version());
+        TrackMetadata meta = state.metadata();
+        if (!meta.isEmpty()) {
+            json.append(",\"album\":\"").append(Json.escape(meta.album()))
+                .append("\",\"duration_ms\":").append(meta.durationMillis())
+                .append(",\"artwork_url\":\"").append(Json.escape(meta.artworkUrl()))
+                .append("\",\"playcount\":").append(meta.playCount());
+        }
+        return json.append('}').toString();
+    }
+
+    /** Returns the JSON body for {@code state}, serializing it only the first time its version is seen. */
+    static Encoded encoded(UUID key, NowPlayingService.Snapshot state) {
+        if (state.version() == 0L) {
+            ENCODED.remove(key);
+            return EMPTY_ENCODED;
+        }
+        Encoded cached = ENCODED.get(key);
+        if (cached != null && cached.version() == state.version()) return cached;
+        Encoded fresh = Encoded.of(state);
+        // Keys are evicted from the service without telling us; a full reset is rare and cheap to refill
+        if (ENCODED.size() >= MAX_ENCODED) ENCODED.clear();
+        // Versions only grow, so a racing request can never replace a newer body with an older one
+        return ENCODED.merge(key, fresh, (old, nu) -> old.version() >= nu.version() ? old : nu);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals(etag) || t.equals("*")) return true;
+        }
+        return false;
+    }
+
+    /** A serialized state; the same bytes are written to every response for that version. */
+    record Encoded(long version, String etag, byte[] bytes) {
+        static Encoded of(NowPlayingService.Snapshot state) {
+            return new Encoded(state.version(), "\"" + state.version() + "\"", toJson(state).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // No separate state holder; we use NowPlayingService getters.
+
+    /** Tiny, no-deps JSON helpers for our simple flat string map use case */
+    static final class Json {
+        /** Reads the top-level scalar fields of a JSON object; nested values are skipped. Anything else is an error. */
+        static Map<String, String> parseFlatStringMap(InputStream in) throws IOException {
+            JsonReader reader = new JsonReader(in);
+            if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) throw new IOException("expected a JSON object");
+            return readFlatObject(reader);
+        }
+
+        /** Reads a top-level array of flat objects; returns null if it holds more than {@code max} of them. */
+        static List<Map<String, String>> parseFlatStringMaps(InputStream in, int max) throws IOException {
+            List<Map<String, String>> list = new ArrayList<>();
+            JsonReader reader = new JsonReader(in);
+            if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) throw new IOException("expected a JSON array");
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (list.size() == max) return null;
+                if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    list.add(readFlatObject(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+            return list;
+        }
+
+        private static Map<String, String> readFlatObject(JsonReader reader) throws IOException {
+            Map<String, String> map = new HashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (reader.peek()) {
+                    case STRING, NUMBER, BOOLEAN -> map.put(name, reader.nextString());
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return map;
+        }
+
+        /** Escapes {@code s} for a JSON string: quotes, backslashes and every control character below 0x20. */
+        static String escape(String s) {
+            int i = 0;
+            while (i < s.length()) {
+                char c = s.charAt(i);
+                if (c < 0x20 || c == '"' || c == '\\') break;
+                i++;
+            }
+            if (i == s.length()) return s;
+            StringBuilder sb = new StringBuilder(s.length() + 16).append(s, 0, i);
+            for (; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            sb.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                        } else {
+                            sb.append(c);
+                        }
+                    }
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
+
+
@@ -0,0 +1,193 @@
+package com.example.nowplaying;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * In-process metrics for the poller, the HTTP server and the stores, rendered in the Prometheus text format
+ * by {@code GET /metrics}. Recording only bumps {@link LongAdder}s in pre-built series, so it allocates nothing;
+ * all formatting happens at scrape time.
+ */
+final class NowPlayingMetrics {
+    // Histogram bucket upper bounds, in seconds
+    private static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final int MAX_ERROR_CODE = 31;
+
+    private static final Map<String, LastFmSeries> LASTFM = new ConcurrentHashMap<>();
+    private static final Map<String, HttpSeries> HTTP = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+    private static final Map<String, LabelledGauge> LABELLED = new ConcurrentHashMap<>();
+
+    static final Timer STORE_READ = new Timer();
+    static final Timer STORE_WRITE = new Timer();
+
+    private NowPlayingMetrics() {}
+
+    static LastFmSeries lastFm(String method) {
+        return LASTFM.computeIfAbsent(method, k -> new LastFmSeries());
+    }
+
+    static HttpSeries http(String endpoint) {
+        return HTTP.computeIfAbsent(endpoint, k -> new HttpSeries());
+    }
+
+    /** Registers (or replaces) a value that is read at scrape time; {@code type} is "gauge" or "counter". */
+    static void gauge(String name, String type, String help, LongSupplier value) {
+        GAUGES.put(name, new Gauge(type, help, value));
+    }
+
+    /** Like {@link #gauge}, but one series per value of {@code label} (e.g. per API key). */
+    static void gauge(String name, String type, String help, String label, Supplier<Map<String, Long>> values) {
+        LABELLED.put(name, new LabelledGauge(type, help, label, values));
+    }
+
+    static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        header(out, "nowplaying_lastfm_requests_total", "counter", "Last.fm API calls by method and HTTP status class");
+        LASTFM.forEach((method, s) -> {
+            for (int i = 0; i < s.byStatus.length; i++) {
+                long n = s.byStatus[i].sum();
+                if (n > 0) {
+                    out.append("nowplaying_lastfm_requests_total{method=\"").append(method)
+                        .append("\",status=\"").append(statusLabel(i)).append("\"} ").append(n).append('\n');
+                }
+            }
+        });
+        header(out, "nowplaying_lastfm_errors_total", "counter", "Last.fm API error codes by method");
+        LASTFM.forEach((method, s) -> {
+            for (int i = 0; i < s.byErrorCode.length; i++) {
+                long n = s.byErrorCode[i].sum();
+                if (n > 0) {
+                    out.append("nowplaying_lastfm_errors_total{method=\"").append(method)
+                        .append("\",code=\"").append(i == 0 ? "other" : String.valueOf(i)).append("\"} ")
+                        .append(n).append('\n');
+                }
+            }
+        });
+        header(out, "nowplaying_lastfm_request_seconds", "histogram", "Last.fm API call latency");
+        LASTFM.forEach((method, s) -> s.latency.render(out, "nowplaying_lastfm_request_seconds", "method=\"" + method + "\""));
+
+        header(out, "nowplaying_http_requests_total", "counter", "Local HTTP requests by endpoint and status class");
+        HTTP.forEach((endpoint, s) -> {
+            for (int i = 0; i < s.byStatus.length; i++) {
+                long n = s.byStatus[i].sum();
+                if (n > 0) {
+                    out.append("nowplaying_http_requests_total{endpoint=\"").append(endpoint)
+                        .append("\",status=\"").append(statusLabel(i)).append("\"} ").append(n).append('\n');
+                }
+            }
+        });
+        header(out, "nowplaying_http_request_seconds", "histogram",
+            "Local HTTP handler time by endpoint (parked streams and long polls count until they are parked)");
+        HTTP.forEach((endpoint, s) -> s.latency.render(out, "nowplaying_http_request_seconds", "endpoint=\"" + endpoint + "\""));
+
+        header(out, "nowplaying_store_seconds", "histogram", "Player settings storage I/O");
+        STORE_READ.render(out, "nowplaying_store_seconds", "op=\"read\"");
+        STORE_WRITE.render(out, "nowplaying_store_seconds", "op=\"write\"");
+
+        GAUGES.forEach((name, g) -> {
+            header(out, name, g.type(), g.help());
+            out.append(name).append(' ').append(g.value().getAsLong()).append('\n');
+        });
+        LABELLED.forEach((name, g) -> {
+            header(out, name, g.type(), g.help());
+            g.values().get().forEach((value, n) -> out.append(name).append('{').append(g.label()).append("=\"")
+                .append(value).append("\"} ").append(n).append('\n'));
+        });
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // Index 0 is "no response" (connect failure or timeout; for the local server, a parked long poll), 1..5 are 1xx..5xx
+    private static int statusIndex(int status) {
+        int i = status / 100;
+        return i >= 1 && i <= 5 ? i : 0;
+    }
+
+    private static String statusLabel(int index) {
+        return index == 0 ? "none" : index + "xx";
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    static final class LastFmSeries {
+        final Timer latency = new Timer();
+        private final LongAdder[] byStatus = adders(6);
+        private final LongAdder[] byErrorCode = adders(MAX_ERROR_CODE + 1);
+
+        /** {@code status} 0 means no HTTP response; {@code errorCode} 0 means the body carried none. */
+        void record(long startNanos, int status, int errorCode) {
+            latency.record(System.nanoTime() - startNanos);
+            byStatus[statusIndex(status)].increment();
+            if (errorCode != 0) {
+                byErrorCode[errorCode > 0 && errorCode <= MAX_ERROR_CODE ? errorCode : 0].increment();
+            }
+        }
+    }
+
+    static final class HttpSeries {
+        final Timer latency = new Timer();
+        private final LongAdder[] byStatus = adders(6);
+
+        void record(long startNanos, int status) {
+            latency.record(System.nanoTime() - startNanos);
+            byStatus[statusIndex(status)].increment();
+        }
+    }
+
+    /** Fixed-bucket latency histogram. */
+    static final class Timer {
+        private static final long[] BOUNDS_NANOS = new long[BUCKETS.length];
+
+        static {
+            for (int i = 0; i < BUCKETS.length; i++) BOUNDS_NANOS[i] = (long) (BUCKETS[i] * 1_000_000_000d);
+        }
+
+        // One slot per bound plus the +Inf overflow; counts are per bucket, made cumulative when rendered
+        private final LongAdder[] counts = adders(BUCKETS.length + 1);
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            int i = 0;
+            while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) i++;
+            counts[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        /** Starts a measurement; pass the result to {@link #stop(long)}. */
+        long start() {
+            return System.nanoTime();
+        }
+
+        void stop(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        private void render(StringBuilder out, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i].sum();
+                out.append(name).append("_bucket{").append(labels).append(",le=\"")
+                    .append(i < BUCKETS.length ? String.valueOf(BUCKETS[i]) : "+Inf").append("\"} ")
+                    .append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum{").append(labels).append("} ").append(sumNanos.sum() / 1_000_000_000d).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+        }
+    }
+
+    private record Gauge(String type, String help, LongSupplier value) {}
+
+    private record LabelledGauge(String type, String help, String label, Supplier<Map<String, Long>> values) {}
+}
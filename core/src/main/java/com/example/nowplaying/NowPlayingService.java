@@ -0,0 +1,296 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the latest now-playing info per player, pushed from an external source (e.g., browser extension) or Last.fm.
+ * Each key maps to an immutable {@link Snapshot} that is swapped atomically on update, so readers never lock.
+ * <p>
+ * {@link Listener}s hear about real track changes only: repeated identical updates (e.g. every Last.fm poll) are
+ * dropped, and bursts of changes for one key are coalesced into a single event once they settle. Events are
+ * delivered on a dedicated thread, never on the thread that called {@link #update}.
+ */
+public final class NowPlayingService {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+
+    /** Key for the single-user state (client side, console, or updates that don't name a player). */
+    public static final UUID LOCAL = new UUID(0L, 0L);
+
+    private static final int MAX_FIELD_LENGTH = 256;
+    private static final int MAX_ENTRIES = 4096;
+    private static final Duration IDLE_TIMEOUT = Duration.ofHours(1);
+    private static final long SWEEP_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+    private static final long SETTLE_MILLIS = 300L;
+
+    private static final Map<UUID, Snapshot> STATES = new ConcurrentHashMap<>();
+    // Seeded from the clock so versions handed out before a restart are not reused
+    private static final AtomicLong VERSIONS = new AtomicLong(System.currentTimeMillis());
+    private static final AtomicLong nextSweepAt = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final Set<UUID> PENDING = ConcurrentHashMap.newKeySet();
+    private static final Map<UUID, Snapshot> LAST_DISPATCHED = new ConcurrentHashMap<>();
+    // Last formatted message per key, reused for as long as the version and template stay the same
+    private static final Map<UUID, Formatted> FORMATTED = new ConcurrentHashMap<>();
+    private static volatile FormatTemplate template = FormatTemplate.compile(FormatTemplate.DEFAULT);
+    private static ScheduledExecutorService dispatcher;
+
+    private NowPlayingService() {}
+
+    public static void update(String title, String artist, String source) {
+        update(LOCAL, title, artist, source);
+    }
+
+    public static void update(UUID key, String title, String artist, String source) {
+        Objects.requireNonNull(key, "key");
+        String t = nonNull(title);
+        String a = nonNull(artist);
+        String s = nonNull(source);
+        if (t.isEmpty() && a.isEmpty()) {
+            // Nothing playing: drop the key rather than give an empty state a version of its own
+            clear(key);
+            return;
+        }
+        Instant now = Instant.now();
+        long[] previousVersion = {-1L};
+        Snapshot next = STATES.compute(key, (k, previous) -> {
+            if (previous == null) return new Snapshot(t, a, s, now, VERSIONS.incrementAndGet(), TrackMetadata.NONE);
+            previousVersion[0] = previous.version();
+            // Same track again only refreshes the timestamp and keeps its version and metadata
+            boolean same = previous.title().equals(t) && previous.artist().equals(a) && previous.source().equals(s);
+            return same
+                ? new Snapshot(t, a, s, now, previous.version(), previous.metadata())
+                : new Snapshot(t, a, s, now, VERSIONS.incrementAndGet(), TrackMetadata.NONE);
+        });
+        if (next.version() != previousVersion[0]) {
+            changed(key);
+        }
+        maybeSweep();
+    }
+
+    /**
+     * Attaches metadata to the current track of {@code key}, provided it is still {@code title} by {@code artist}.
+     * This moves the version, so HTTP clients and listeners see the enriched state.
+     */
+    public static void attachMetadata(UUID key, String title, String artist, TrackMetadata metadata) {
+        Objects.requireNonNull(metadata, "metadata");
+        boolean[] attached = {false};
+        STATES.computeIfPresent(key, (k, current) -> {
+            if (!current.title().equals(title) || !current.artist().equals(artist)
+                    || current.metadata().equals(metadata)) {
+                return current;
+            }
+            attached[0] = true;
+            return new Snapshot(current.title(), current.artist(), current.source(), current.updatedAt(),
+                VERSIONS.incrementAndGet(), metadata);
+        });
+        if (attached[0]) {
+            changed(key);
+        }
+    }
+
+    public static void clear() {
+        clear(LOCAL);
+    }
+
+    public static void clear(UUID key) {
+        Snapshot previous = STATES.remove(key);
+        FORMATTED.remove(key);
+        if (previous != null && !previous.isEmpty()) {
+            changed(key);
+        }
+    }
+
+    public static void addListener(Listener listener) {
+        LISTENERS.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    public static void removeListener(Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    public static Snapshot get(UUID key) {
+        Snapshot s = key == null ? null : STATES.get(key);
+        return s != null ? s : Snapshot.EMPTY;
+    }
+
+    public static String getFormattedNowPlaying() {
+        return getFormattedNowPlaying(LOCAL);
+    }
+
+    /** The current message for {@code key}; formatted once per state version, so repeated calls allocate nothing. */
+    public static String getFormattedNowPlaying(UUID key) {
+        return format(key, get(key));
+    }
+
+    /**
+     * {@code s}, a state of {@code key} such as one handed to a {@link Listener}, rendered with the current template;
+     * shares the cache with {@link #getFormattedNowPlaying(UUID)} while {@code s} is still the current state.
+     */
+    public static String format(UUID key, Snapshot s) {
+        if (s.isEmpty()) return "";
+        FormatTemplate t = template;
+        Formatted f = FORMATTED.get(key);
+        if (f != null && f.version() == s.version() && f.template() == t) return f.text();
+        String text = t.render(s);
+        // An older state would only push the current one out of the cache
+        if (get(key).version() == s.version()) FORMATTED.put(key, new Formatted(s.version(), t, text));
+        return text;
+    }
+
+    /** Sets the template for now-playing messages; cached messages are re-rendered on their next use. */
+    public static void setFormat(FormatTemplate format) {
+        template = Objects.requireNonNull(format, "format");
+    }
+
+    public static Instant getLastUpdatedAt() {
+        return get(LOCAL).updatedAt();
+    }
+
+    public static String getCurrentTitle() {
+        return get(LOCAL).title();
+    }
+
+    public static String getCurrentArtist() {
+        return get(LOCAL).artist();
+    }
+
+    public static String getCurrentSource() {
+        return get(LOCAL).source();
+    }
+
+    public static int size() {
+        return STATES.size();
+    }
+
+    /**
+     * Drops entries that have not been updated within {@code idleTimeout}, then trims the oldest entries
+     * if the store is still over capacity. Listeners see each dropped entry change to {@link Snapshot#EMPTY},
+     * so they can let go of whatever they keep per player.
+     */
+    public static void evictIdle(Duration idleTimeout) {
+        Instant cutoff = Instant.now().minus(idleTimeout);
+        List<UUID> evicted = new ArrayList<>();
+        STATES.forEach((key, s) -> {
+            // remove(key, value): an update that just came in keeps its entry
+            if (s.updatedAt().isBefore(cutoff) && STATES.remove(key, s)) evicted.add(key);
+        });
+        int excess = STATES.size() - MAX_ENTRIES;
+        if (excess > 0) {
+            STATES.entrySet().stream()
+                .sorted(Comparator.comparing(e -> e.getValue().updatedAt()))
+                .limit(excess)
+                .toList()
+                .forEach(e -> {
+                    if (STATES.remove(e.getKey(), e.getValue())) evicted.add(e.getKey());
+                });
+        }
+        FORMATTED.keySet().retainAll(STATES.keySet());
+        evicted.forEach(NowPlayingService::changed);
+    }
+
+    private static void changed(UUID key) {
+        if (LISTENERS.isEmpty()) return;
+        // First change opens the settle window; later ones just ride along with it
+        if (PENDING.add(key)) {
+            dispatcher().schedule(() -> dispatch(key), SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void dispatch(UUID key) {
+        PENDING.remove(key);
+        Snapshot current = get(key);
+        Snapshot previous = LAST_DISPATCHED.getOrDefault(key, Snapshot.EMPTY);
+        // A -> B -> A within the window is no change at all
+        if (previous.sameTrack(current) && previous.metadata().equals(current.metadata())) return;
+        if (current.isEmpty()) {
+            LAST_DISPATCHED.remove(key);
+        } else {
+            LAST_DISPATCHED.put(key, current);
+        }
+        for (Listener listener : LISTENERS) {
+            try {
+                listener.onTrackChanged(key, previous, current);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Now playing listener {} failed", listener, e);
+            }
+        }
+    }
+
+    private static synchronized ScheduledExecutorService dispatcher() {
+        if (dispatcher == null) {
+            dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "nowplaying-events");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return dispatcher;
+    }
+
+    private static void maybeSweep() {
+        long now = System.nanoTime();
+        long due = nextSweepAt.get();
+        if (now - due < 0 && STATES.size() <= MAX_ENTRIES) return;
+        // Only the thread that wins the CAS sweeps; everyone else moves on
+        if (nextSweepAt.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            evictIdle(IDLE_TIMEOUT);
+        }
+    }
+
+    private static String nonNull(String s) {
+        String v = Objects.requireNonNullElse(s, "").trim();
+        return v.length() > MAX_FIELD_LENGTH ? v.substring(0, MAX_FIELD_LENGTH) : v;
+    }
+
+    private record Formatted(long version, FormatTemplate template, String text) {}
+
+    /**
+     * Receives settled track changes; {@code current} is {@link Snapshot#EMPTY} when the key was cleared.
+     * Metadata arriving for the playing track is delivered too, with {@code previous.sameTrack(current)} true.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onTrackChanged(UUID key, Snapshot previous, Snapshot current);
+    }
+
+    /**
+     * Immutable now-playing state of one key. {@code version} changes whenever the track or its metadata does,
+     * and never goes backwards; an empty or cleared key has version 0.
+     */
+    public record Snapshot(String title, String artist, String source, Instant updatedAt, long version,
+                           TrackMetadata metadata) {
+        public static final Snapshot EMPTY = new Snapshot("", "", "", Instant.EPOCH, 0L, TrackMetadata.NONE);
+
+        public boolean isEmpty() {
+            return title.isEmpty() && artist.isEmpty();
+        }
+
+        /** Same track from the same source, ignoring when it was reported. */
+        public boolean sameTrack(Snapshot other) {
+            return title.equals(other.title) && artist.equals(other.artist) && source.equals(other.source);
+        }
+
+        /** Renders with the configured template, uncached; see {@link NowPlayingService#getFormattedNowPlaying(UUID)}. */
+        public String format() {
+            return template.render(this);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the engine as a standalone process, outside the game. Point it at the game's config directory and every
+ * client on the machine can use the one instance:
+ * <pre>
+ * java -cp ... com.example.nowplaying.NowPlayingSidecar --config-dir ~/.minecraft/config [--port 18080]
+ * </pre>
+ * Without {@code --port} the HTTP server follows {@code http_port} from the config, also when it is changed later.
+ */
+public final class NowPlayingSidecar {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+
+    private NowPlayingSidecar() {}
+
+    public static void main(String[] args) throws InterruptedException {
+        Path configDir = Path.of("config");
+        int port = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 < args.length && arg.equals("--config-dir")) {
+                configDir = Path.of(args[++i]);
+            } else if (i + 1 < args.length && arg.equals("--port")) {
+                try {
+                    port = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    usage("Not a port: " + args[i]);
+                    return;
+                }
+            } else {
+                usage("Unknown argument: " + arg);
+                return;
+            }
+        }
+        if (!Files.isDirectory(configDir)) {
+            LOGGER.warn("Config directory {} does not exist yet; it is created on first save", configDir.toAbsolutePath());
+        }
+
+        Path dir = configDir.toAbsolutePath();
+        NowPlayingConfig.setConfigDirProvider(() -> dir);
+        Runtime.getRuntime().addShutdownHook(new Thread(NowPlayingEngine::flush, "nowplaying-shutdown"));
+        NowPlayingEngine.start(port).join();
+        LOGGER.info("NowPlaying sidecar running with config from {}", dir);
+        // Engine threads are daemons; keep the process alive until it is stopped
+        Thread.currentThread().join();
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: NowPlayingSidecar [--config-dir <dir>] [--port <port>]");
+        System.exit(2);
+    }
+}
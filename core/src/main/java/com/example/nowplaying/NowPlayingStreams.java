@@ -0,0 +1,243 @@
+package com.example.nowplaying;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Push side of the local HTTP server: Server-Sent Event streams and long-poll waiters.
+ * Handlers park the exchange here and return, so an idle client holds a socket but no executor thread.
+ * On a track change the event frame is encoded once and the same bytes are queued for every subscriber of that key;
+ * each stream is written by its own virtual thread, so a slow client only ever holds up itself.
+ */
+final class NowPlayingStreams {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final int MAX_STREAMS = 256;
+    private static final long LONG_POLL_TIMEOUT_SECONDS = 25;
+    private static final long PING_INTERVAL_SECONDS = 15;
+    private static final byte[] PING = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+    // A stream further behind than this, or stuck in one write for longer, is dropped; the client reconnects
+    private static final int MAX_PENDING_FRAMES = 16;
+    private static final long WRITE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final ThreadFactory STREAM_WRITERS = Thread.ofVirtual().name("nowplaying-stream-", 1).factory();
+    // Long-poll answers are written off the timer thread for the same reason
+    private static final ExecutorService REPLIES = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static final Map<UUID, Set<Stream>> STREAMS = new ConcurrentHashMap<>();
+    private static final Map<UUID, Queue<Waiter>> WAITERS = new ConcurrentHashMap<>();
+    private static final AtomicInteger streamCount = new AtomicInteger();
+    private static ScheduledExecutorService writer;
+
+    private NowPlayingStreams() {}
+
+    /** Opens an SSE stream for {@code key}; the current state is sent right away. */
+    static void openStream(HttpExchange exchange, UUID key) throws IOException {
+        if (streamCount.incrementAndGet() > MAX_STREAMS) {
+            streamCount.decrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "5");
+            NowPlayingHttpServer.respondJson(exchange, 503, "{\"error\":\"too_many_streams\"}");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        writer();
+        Stream stream = new Stream(key, exchange);
+        stream.send(frame(NowPlayingService.get(key)));
+        STREAMS.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(stream);
+        stream.start();
+    }
+
+    /**
+     * Long poll: answers immediately if the state of {@code key} is no longer at version {@code since},
+     * otherwise parks the exchange until the next change or the timeout (304).
+     */
+    static void awaitChange(HttpExchange exchange, UUID key, long since) throws IOException {
+        NowPlayingService.Snapshot current = NowPlayingService.get(key);
+        if (current.version() != since) {
+            NowPlayingHttpServer.respond(exchange, 200, "application/json; charset=utf-8",
+                NowPlayingHttpServer.encoded(key, current).bytes());
+            return;
+        }
+        Waiter waiter = new Waiter(exchange);
+        Queue<Waiter> queue = WAITERS.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>());
+        waiter.timeout = writer().schedule(() -> {
+            if (queue.remove(waiter)) REPLIES.execute(() -> waiter.finish(304, null));
+        }, LONG_POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        queue.add(waiter);
+        // The change may have landed between the version check and queueing
+        NowPlayingService.Snapshot now = NowPlayingService.get(key);
+        if (now.version() != since && queue.remove(waiter)) {
+            waiter.timeout.cancel(false);
+            waiter.finish(200, NowPlayingHttpServer.encoded(key, now).bytes());
+        }
+    }
+
+    static int openStreams() {
+        return streamCount.get();
+    }
+
+    static int parkedPolls() {
+        return WAITERS.values().stream().mapToInt(Queue::size).sum();
+    }
+
+    private static void onTrackChanged(UUID key, NowPlayingService.Snapshot previous, NowPlayingService.Snapshot current) {
+        Set<Stream> streams = STREAMS.get(key);
+        Queue<Waiter> waiters = WAITERS.get(key);
+        if ((streams == null || streams.isEmpty()) && (waiters == null || waiters.isEmpty())) return;
+        byte[] json = NowPlayingHttpServer.encoded(key, current).bytes();
+        if (waiters != null) {
+            Waiter w;
+            while ((w = waiters.poll()) != null) {
+                w.timeout.cancel(false);
+                Waiter waiter = w;
+                REPLIES.execute(() -> waiter.finish(200, json));
+            }
+        }
+        if (streams != null && !streams.isEmpty()) {
+            byte[] frame = frame(current);
+            streams.forEach(s -> s.send(frame));
+        }
+    }
+
+    private static void ping() {
+        long now = System.nanoTime();
+        STREAMS.values().forEach(streams -> streams.forEach(s -> {
+            if (s.stalled(now)) {
+                LOGGER.debug("Now playing stream for {} stopped reading, dropping it", s.key);
+                s.close();
+            } else {
+                s.send(PING);
+            }
+        }));
+    }
+
+    // The JSON has no raw line breaks once escaped, but a line break inside "data:" would end the event early,
+    // so every line of the payload gets its own data field; clients join them back with \n
+    static byte[] frame(NowPlayingService.Snapshot snapshot) {
+        StringBuilder frame = new StringBuilder(256).append("id: ").append(snapshot.version()).append("\nevent: nowplaying\n");
+        for (String line : NowPlayingHttpServer.toJson(snapshot).split("\r\n|\r|\n", -1)) {
+            frame.append("data: ").append(line).append('\n');
+        }
+        return frame.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static synchronized ScheduledExecutorService writer() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "nowplaying-stream");
+                t.setDaemon(true);
+                return t;
+            });
+            writer.scheduleWithFixedDelay(NowPlayingStreams::ping, PING_INTERVAL_SECONDS, PING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            NowPlayingService.addListener(NowPlayingStreams::onTrackChanged);
+        }
+        return writer;
+    }
+
+    private static final class Stream implements Runnable {
+        private final UUID key;
+        private final HttpExchange exchange;
+        private final BlockingQueue<byte[]> pending = new ArrayBlockingQueue<>(MAX_PENDING_FRAMES);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final Thread thread;
+        // System.nanoTime() when the current write began, 0 while waiting for the next frame
+        private volatile long writeStartedAt;
+
+        Stream(UUID key, HttpExchange exchange) {
+            this.key = key;
+            this.exchange = exchange;
+            this.thread = STREAM_WRITERS.newThread(this);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        // Never blocks: the frame is queued for this stream's writer
+        void send(byte[] bytes) {
+            if (closed.get()) return;
+            if (!pending.offer(bytes)) {
+                LOGGER.debug("Now playing stream for {} fell {} frames behind, dropping it", key, MAX_PENDING_FRAMES);
+                close();
+            }
+        }
+
+        boolean stalled(long now) {
+            long started = writeStartedAt;
+            return started != 0 && now - started > WRITE_TIMEOUT_NANOS;
+        }
+
+        // Only this thread writes to the exchange, so frames never interleave
+        @Override
+        public void run() {
+            try {
+                OutputStream out = exchange.getResponseBody();
+                while (!closed.get()) {
+                    byte[] bytes = pending.take();
+                    writeStartedAt = System.nanoTime() | 1L;
+                    out.write(bytes);
+                    out.flush();
+                    writeStartedAt = 0;
+                }
+            } catch (IOException | InterruptedException e) {
+                // The client went away, or close() woke the writer up
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            Set<Stream> streams = STREAMS.get(key);
+            if (streams != null) streams.remove(this);
+            streamCount.decrementAndGet();
+            thread.interrupt();
+            // Also fails a write that is stuck on a client that stopped reading
+            exchange.close();
+            LOGGER.debug("Now playing stream for {} closed", key);
+        }
+    }
+
+    private static final class Waiter {
+        private final HttpExchange exchange;
+        volatile ScheduledFuture<?> timeout;
+
+        Waiter(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        void finish(int status, byte[] body) {
+            try {
+                if (body == null) {
+                    exchange.sendResponseHeaders(status, -1);
+                    exchange.close();
+                } else {
+                    NowPlayingHttpServer.respond(exchange, status, "application/json; charset=utf-8", body);
+                }
+            } catch (IOException e) {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-player settings, cached in memory and written behind.
+ * Players are read lazily on first access; changes mark the player dirty and a background flusher writes all dirty
+ * players in one batch a few seconds later. Call {@link #flush()} on shutdown to persist whatever is still pending.
+ * <p>
+ * Storage is either one properties file per player ({@code player_store=files}, the default) or a single
+ * append-only log ({@code player_store=log}); switching to the log imports the existing files once.
+ */
+public final class PlayerConfigStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final long FLUSH_DELAY_SECONDS = 5;
+
+    private static final Map<UUID, PlayerSettings> CACHE = new ConcurrentHashMap<>();
+    private static final Set<UUID> DIRTY = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean FLUSH_SCHEDULED = new AtomicBoolean();
+    // Read side: filling the cache and updating it; write side: switching backends, so no entry read from or meant
+    // for the old backend slips in while the cache is emptied
+    private static final ReadWriteLock SWITCH = new ReentrantReadWriteLock();
+    private static ScheduledExecutorService flusher;
+    private static volatile PlayerSettingsBackend backend;
+    private static volatile String backendType;
+
+    private PlayerConfigStore() {}
+
+    public static String getLastfmUsername(UUID playerUuid, String fallback) {
+        if (playerUuid == null) return fallback;
+        String u = get(playerUuid).get("lastfm_username");
+        return u == null ? fallback : u;
+    }
+
+    public static void setLastfmUsername(UUID playerUuid, String username) {
+        if (playerUuid == null) return;
+        update(playerUuid, "lastfm_username", username == null ? "" : username.trim());
+    }
+
+    /** The player's own Last.fm API key, which their polls use instead of the shared ones; empty if none. */
+    public static String getLastfmApiKey(UUID playerUuid) {
+        if (playerUuid == null) return "";
+        String key = get(playerUuid).get("lastfm_api_key");
+        return key == null ? "" : key;
+    }
+
+    public static void setLastfmApiKey(UUID playerUuid, String apiKey) {
+        if (playerUuid == null) return;
+        update(playerUuid, "lastfm_api_key", apiKey == null ? "" : apiKey.trim());
+    }
+
+    /** The player's Last.fm session key for scrobbling; empty if they have not set one. */
+    public static String getLastfmSessionKey(UUID playerUuid) {
+        if (playerUuid == null) return "";
+        String sk = get(playerUuid).get("lastfm_session_key");
+        return sk == null ? "" : sk;
+    }
+
+    public static void setLastfmSessionKey(UUID playerUuid, String sessionKey) {
+        if (playerUuid == null) return;
+        update(playerUuid, "lastfm_session_key", sessionKey == null ? "" : sessionKey.trim());
+    }
+
+    /** Whether the player's track changes are announced in server chat; off unless they opted in. */
+    public static boolean isBroadcastEnabled(UUID playerUuid) {
+        return playerUuid != null && "true".equals(get(playerUuid).get("broadcast"));
+    }
+
+    public static void setBroadcastEnabled(UUID playerUuid, boolean enabled) {
+        if (playerUuid == null) return;
+        update(playerUuid, "broadcast", String.valueOf(enabled));
+    }
+
+    /**
+     * Selects the storage backend; pending changes are flushed to the previous one first, and whatever could not be
+     * written there stays dirty and goes to the new one. Updates wait while the backend is switched.
+     * Does nothing if that backend is already open, e.g. because a player was looked up before startup got here.
+     */
+    public static synchronized void configure(NowPlayingConfig cfg) {
+        String type = "log".equals(cfg.getPlayerStore()) ? "log" : "files";
+        if (backend != null && type.equals(backendType)) return;
+        PlayerSettingsBackend previous = backend;
+        SWITCH.writeLock().lock();
+        try {
+            if (previous != null) flush();
+            try {
+                backend = type.equals("log") ? openLog() : new PropertiesFileBackend(playersDir());
+            } catch (IOException e) {
+                LOGGER.error("Failed to open player settings log, falling back to per-player files", e);
+                backend = new PropertiesFileBackend(playersDir());
+            }
+            backendType = type;
+            CACHE.keySet().retainAll(DIRTY);
+        } finally {
+            SWITCH.writeLock().unlock();
+        }
+        NowPlayingMetrics.gauge("nowplaying_store_dirty_players", "gauge", "Players with unsaved settings", DIRTY::size);
+        if (previous != null) {
+            try {
+                previous.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    static PlayerSettings get(UUID playerUuid) {
+        PlayerSettings cached = CACHE.get(playerUuid);
+        if (cached != null) return cached;
+        // Opened before taking the lock: opening it may switch backends, which needs the write side
+        backend();
+        SWITCH.readLock().lock();
+        try {
+            // A failed read is not cached, so the next lookup tries again
+            PlayerSettings settings = CACHE.computeIfAbsent(playerUuid, PlayerConfigStore::read);
+            return settings != null ? settings : PlayerSettings.EMPTY;
+        } finally {
+            SWITCH.readLock().unlock();
+        }
+    }
+
+    static void update(UUID playerUuid, String key, String value) {
+        backend();
+        SWITCH.readLock().lock();
+        try {
+            PlayerSettings updated = CACHE.compute(playerUuid, (id, current) -> {
+                PlayerSettings base = current != null ? current : read(id);
+                // Unreadable: writing just this key would wipe the player's other settings
+                return base == null ? null : base.with(key, value);
+            });
+            if (updated == null) {
+                LOGGER.warn("Not saving {} for {}: their settings could not be read", key, playerUuid);
+                return;
+            }
+            DIRTY.add(playerUuid);
+        } finally {
+            SWITCH.readLock().unlock();
+        }
+        scheduleFlush();
+    }
+
+    /** Writes every dirty player now, on the calling thread. */
+    public static synchronized void flush() {
+        if (DIRTY.isEmpty()) return;
+        Map<UUID, PlayerSettings> batch = new HashMap<>();
+        for (UUID id : new ArrayList<>(DIRTY)) {
+            // Clear first: an update racing with this write re-marks the player for the next batch
+            DIRTY.remove(id);
+            PlayerSettings settings = CACHE.get(id);
+            if (settings != null) batch.put(id, settings);
+        }
+        long start = NowPlayingMetrics.STORE_WRITE.start();
+        try {
+            backend().write(batch);
+            NowPlayingMetrics.STORE_WRITE.stop(start);
+            LOGGER.debug("Flushed {} player setting(s)", batch.size());
+        } catch (IOException e) {
+            DIRTY.addAll(batch.keySet());
+            LOGGER.warn("Failed to save player settings", e);
+        }
+    }
+
+    private static void scheduleFlush() {
+        if (!FLUSH_SCHEDULED.compareAndSet(false, true)) return;
+        flusher().schedule(() -> {
+            FLUSH_SCHEDULED.set(false);
+            flush();
+        }, FLUSH_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService flusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "nowplaying-config-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return flusher;
+    }
+
+    // Null if the backend failed
+    private static PlayerSettings read(UUID playerUuid) {
+        long start = NowPlayingMetrics.STORE_READ.start();
+        try {
+            PlayerSettings settings = backend().read(playerUuid);
+            NowPlayingMetrics.STORE_READ.stop(start);
+            return settings;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read player settings for {}", playerUuid, e);
+            return null;
+        }
+    }
+
+    private static PlayerSettingsBackend backend() {
+        PlayerSettingsBackend b = backend;
+        if (b == null) {
+            // First use before the engine configured the store: open whatever the config asks for
+            synchronized (PlayerConfigStore.class) {
+                if (backend == null) configure(ConfigManager.get());
+                b = backend;
+            }
+        }
+        return b;
+    }
+
+    // One-shot migration: the first time the log is opened, import the per-player files into it
+    private static PlayerSettingsBackend openLog() throws IOException {
+        Path log = storeDir().resolve("players.log");
+        boolean fresh = !Files.exists(log);
+        LogFileBackend logBackend = new LogFileBackend(log);
+        if (fresh) {
+            Map<UUID, PlayerSettings> existing = new PropertiesFileBackend(playersDir()).readAll();
+            if (!existing.isEmpty()) {
+                logBackend.write(existing);
+                LOGGER.info("Migrated {} player settings file(s) into {}", existing.size(), log);
+            }
+        }
+        return logBackend;
+    }
+
+    private static Path storeDir() {
+        return NowPlayingConfig.dataDir();
+    }
+
+    private static Path playersDir() {
+        return storeDir().resolve("players");
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.nowplaying;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Immutable key/value settings of one player, mirroring its properties file.
+ * Unknown keys are kept as-is so files written by newer versions survive a round trip.
+ */
+final class PlayerSettings {
+    static final PlayerSettings EMPTY = new PlayerSettings(Map.of());
+
+    private final Map<String, String> values;
+
+    private PlayerSettings(Map<String, String> values) {
+        this.values = values;
+    }
+
+    static PlayerSettings of(Properties p) {
+        Map<String, String> values = new HashMap<>();
+        for (String key : p.stringPropertyNames()) {
+            values.put(key, p.getProperty(key).trim());
+        }
+        return new PlayerSettings(Map.copyOf(values));
+    }
+
+    String get(String key) {
+        return values.get(key);
+    }
+
+    PlayerSettings with(String key, String value) {
+        Map<String, String> copy = new HashMap<>(values);
+        if (value == null) {
+            copy.remove(key);
+        } else {
+            copy.put(key, value);
+        }
+        return new PlayerSettings(Map.copyOf(copy));
+    }
+
+    Properties toProperties() {
+        Properties p = new Properties();
+        p.putAll(values);
+        return p;
+    }
+}
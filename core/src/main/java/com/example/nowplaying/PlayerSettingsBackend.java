@@ -0,0 +1,20 @@
+package com.example.nowplaying;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Storage behind {@link PlayerConfigStore}. Implementations only see cache misses and flush batches;
+ * caching and write-behind happen in the store.
+ */
+interface PlayerSettingsBackend extends Closeable {
+    /** Returns the stored settings, or {@link PlayerSettings#EMPTY} if the player has none. */
+    PlayerSettings read(UUID playerUuid) throws IOException;
+
+    void write(Map<UUID, PlayerSettings> batch) throws IOException;
+
+    @Override
+    default void close() throws IOException {}
+}
@@ -0,0 +1,83 @@
+package com.example.nowplaying;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * The original layout: one {@code <UUID>.properties} file per player.
+ */
+final class PropertiesFileBackend implements PlayerSettingsBackend {
+    private static final String SUFFIX = ".properties";
+
+    private final Path dir;
+
+    PropertiesFileBackend(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public PlayerSettings read(UUID playerUuid) throws IOException {
+        return read(file(playerUuid));
+    }
+
+    @Override
+    public void write(Map<UUID, PlayerSettings> batch) throws IOException {
+        Files.createDirectories(dir);
+        for (Map.Entry<UUID, PlayerSettings> e : batch.entrySet()) {
+            write(file(e.getKey()), e.getValue());
+        }
+    }
+
+    /** Reads every player file in the directory; used to migrate to another backend. */
+    Map<UUID, PlayerSettings> readAll() throws IOException {
+        Map<UUID, PlayerSettings> all = new HashMap<>();
+        if (!Files.isDirectory(dir)) return all;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    UUID id = UUID.fromString(name.substring(0, name.length() - SUFFIX.length()));
+                    all.put(id, read(file));
+                } catch (IllegalArgumentException ignored) {
+                    // Not a player file
+                }
+            }
+        }
+        return all;
+    }
+
+    private static PlayerSettings read(Path path) throws IOException {
+        if (!Files.exists(path)) return PlayerSettings.EMPTY;
+        Properties p = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            p.load(in);
+        }
+        return PlayerSettings.of(p);
+    }
+
+    private static void write(Path path, PlayerSettings settings) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            settings.toProperties().store(out, "Per-player now playing settings");
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path file(UUID playerUuid) {
+        return dir.resolve(playerUuid.toString() + SUFFIX);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.nowplaying;
+
+/** Counts events in one-second slots over a sliding minute. */
+final class RateMeter {
+    private static final int SLOTS = 60;
+    private final long[] counts = new long[SLOTS];
+    private final long[] seconds = new long[SLOTS];
+
+    synchronized void record() {
+        long second = System.currentTimeMillis() / 1000L;
+        int slot = (int) (second % SLOTS);
+        if (seconds[slot] != second) {
+            seconds[slot] = second;
+            counts[slot] = 0;
+        }
+        counts[slot]++;
+    }
+
+    synchronized double perSecond() {
+        long now = System.currentTimeMillis() / 1000L;
+        long total = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            if (now - seconds[i] < SLOTS) total += counts[i];
+        }
+        return total / (double) SLOTS;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.nowplaying;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of async responses, bounded by size and time-to-live.
+ * Concurrent lookups for the same key share one in-flight future, so a burst of callers costs one request.
+ * Failed responses are dropped as soon as they complete; only successes are served from the cache.
+ */
+final class ResponseCache<K, V> {
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final int maxEntries;
+    private volatile long ttlNanos;
+
+    ResponseCache(long ttlMillis, int maxEntries) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    void setTtlMillis(long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    /** Returns the cached or in-flight response for {@code key}, or null if a new request is needed. */
+    CompletableFuture<V> getIfPresent(K key) {
+        Entry<V> e = entries.get(key);
+        if (e == null || e.isExpired(System.nanoTime())) return null;
+        hits.increment();
+        return e.future;
+    }
+
+    /** Returns the cached or in-flight response, or starts one with {@code loader} and shares it with later callers. */
+    CompletableFuture<V> get(K key, Supplier<CompletableFuture<V>> loader) {
+        if (ttlNanos <= 0) {
+            misses.increment();
+            return loader.get();
+        }
+        long now = System.nanoTime();
+        Entry<V> existing = entries.get(key);
+        if (existing != null && !existing.isExpired(now)) {
+            hits.increment();
+            return existing.future;
+        }
+        Entry<V> fresh = new Entry<>();
+        Entry<V> winner = entries.compute(key, (k, e) -> e != null && !e.isExpired(now) ? e : fresh);
+        if (winner != fresh) {
+            hits.increment();
+            return winner.future;
+        }
+        misses.increment();
+        // Load outside compute(): the loader may complete synchronously and touch the map again
+        CompletableFuture<V> load;
+        try {
+            load = loader.get();
+        } catch (RuntimeException e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((value, error) -> {
+            if (error != null) {
+                entries.remove(key, fresh);
+                fresh.future.completeExceptionally(error);
+            } else {
+                fresh.expiresAt = System.nanoTime() + ttlNanos;
+                fresh.future.complete(value);
+            }
+        });
+        if (entries.size() > maxEntries) trim();
+        return fresh.future;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void trim() {
+        long now = System.nanoTime();
+        entries.values().removeIf(e -> e.isExpired(now));
+        int excess = entries.size() - maxEntries;
+        if (excess <= 0) return;
+        List<Map.Entry<K, Entry<V>>> oldest = new ArrayList<>(entries.entrySet());
+        oldest.sort(Comparator.comparingLong(e -> e.getValue().expiresAt));
+        for (int i = 0; i < excess && i < oldest.size(); i++) {
+            entries.remove(oldest.get(i).getKey(), oldest.get(i).getValue());
+        }
+    }
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        // Long.MAX_VALUE while in flight: a pending request never expires
+        volatile long expiresAt = Long.MAX_VALUE;
+
+        boolean isExpired(long now) {
+            return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+        }
+    }
+}
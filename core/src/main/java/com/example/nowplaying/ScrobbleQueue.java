@@ -0,0 +1,233 @@
+package com.example.nowplaying;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Plays waiting to be scrobbled, in one append-only journal that is forced to disk on every write, so nothing queued
+ * is lost to a crash or restart. Adding a play appends an {@code ADD} record; a submitted (or dropped) batch appends
+ * one {@code DONE} record listing its ids. Opening replays the journal: whatever was added and never done is pending.
+ * Once every play is done the journal is emptied, and once most of the plays in it are done it is rewritten with the
+ * pending plays only.
+ * <p>
+ * Record layout, as in {@link LogFileBackend}: {@code int payloadLength, int crc32(payload)}, then the payload:
+ * {@code byte 1, long id, long uuidMsb, long uuidLsb, long timestamp, int durationSeconds, UTF artist, UTF title,
+ * UTF album} or {@code byte 2, int count, count x long id}. A torn or corrupt tail is truncated when opened.
+ */
+final class ScrobbleQueue implements Closeable {
+    private static final int HEADER_BYTES = 8;
+    private static final byte ADD = 1;
+    private static final byte DONE = 2;
+    private static final long MIN_COMPACT_BYTES = 64 * 1024;
+
+    private final Path file;
+    // Pending plays by id, oldest first
+    private final TreeMap<Long, Scrobble> pending = new TreeMap<>();
+    private FileChannel channel;
+    private long nextId;
+    // ADD records in the journal, pending or not
+    private int added;
+
+    ScrobbleQueue(Path file) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        open();
+    }
+
+    /** Queues a play; it is on disk when this returns. */
+    synchronized Scrobble add(UUID player, long timestamp, String artist, String title, String album,
+                              int durationSeconds) throws IOException {
+        Scrobble s = new Scrobble(nextId++, player, timestamp, artist, title, album, durationSeconds);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        writeAdd(bytes, s);
+        append(bytes.toByteArray());
+        pending.put(s.id(), s);
+        added++;
+        return s;
+    }
+
+    /** Marks plays as done, whether they were accepted or given up on. */
+    synchronized void remove(Collection<Scrobble> done) throws IOException {
+        if (done.isEmpty()) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + 5 + done.size() * 8);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(5 + done.size() * 8);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(DONE);
+        out.writeInt(done.size());
+        for (Scrobble s : done) out.writeLong(s.id());
+        writeRecord(bytes, payload.toByteArray());
+        append(bytes.toByteArray());
+        for (Scrobble s : done) pending.remove(s.id());
+        if (pending.isEmpty()) {
+            channel.truncate(0);
+            channel.force(false);
+            added = 0;
+        } else if (channel.size() > MIN_COMPACT_BYTES && added > pending.size() * 2) {
+            compact();
+        }
+    }
+
+    /** Pending plays, oldest first. */
+    synchronized List<Scrobble> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void append(byte[] bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        long base = channel.size();
+        long pos = base;
+        try {
+            while (buf.hasRemaining()) {
+                pos += channel.write(buf, pos);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // As in LogFileBackend: a torn record left behind would make replay() drop every record after it
+            try {
+                channel.truncate(base);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        pending.clear();
+        added = 0;
+        long end = replay();
+        if (end < channel.size()) {
+            channel.truncate(end);
+            channel.force(false);
+        }
+    }
+
+    // Returns the end of the last intact record
+    private long replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) return 0;
+        if (size > Integer.MAX_VALUE) throw new IOException("Scrobble queue too large: " + size);
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, buf.position()) < 0) break;
+        }
+        buf.flip();
+        CRC32 crc = new CRC32();
+        int pos = 0;
+        while (buf.limit() - pos >= HEADER_BYTES) {
+            int length = buf.getInt(pos);
+            int checksum = buf.getInt(pos + 4);
+            if (length < 1 || length > buf.limit() - pos - HEADER_BYTES) break;
+            byte[] payload = new byte[length];
+            buf.get(pos + HEADER_BYTES, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) break;
+            try {
+                apply(payload);
+            } catch (IOException | RuntimeException e) {
+                break;
+            }
+            pos += HEADER_BYTES + length;
+        }
+        return pos;
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        if (type == ADD) {
+            long id = in.readLong();
+            UUID player = new UUID(in.readLong(), in.readLong());
+            long timestamp = in.readLong();
+            int duration = in.readInt();
+            Scrobble s = new Scrobble(id, player, timestamp, in.readUTF(), in.readUTF(), in.readUTF(), duration);
+            pending.put(id, s);
+            added++;
+            nextId = Math.max(nextId, id + 1);
+        } else if (type == DONE) {
+            for (int i = in.readInt(); i > 0; i--) pending.remove(in.readLong());
+        } else {
+            throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(pending.size() * 96);
+        for (Scrobble s : pending.values()) writeAdd(bytes, s);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining()) out.write(buf);
+            out.force(false);
+        }
+        // Reopened whichever file ends up there; the old journal replays to the same pending plays
+        channel.close();
+        try {
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+            open();
+        }
+    }
+
+    private static void writeAdd(ByteArrayOutputStream bytes, Scrobble s) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(96);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(ADD);
+        out.writeLong(s.id());
+        out.writeLong(s.player().getMostSignificantBits());
+        out.writeLong(s.player().getLeastSignificantBits());
+        out.writeLong(s.timestamp());
+        out.writeInt(s.durationSeconds());
+        out.writeUTF(s.artist());
+        out.writeUTF(s.title());
+        out.writeUTF(s.album());
+        writeRecord(bytes, payload.toByteArray());
+    }
+
+    private static void writeRecord(ByteArrayOutputStream bytes, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    /** One play; {@code timestamp} is when it started, in epoch seconds, as Last.fm expects. */
+    record Scrobble(long id, UUID player, long timestamp, String artist, String title, String album,
+                    int durationSeconds) {}
+}
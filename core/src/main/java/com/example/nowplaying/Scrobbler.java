@@ -0,0 +1,314 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrobbles tracks that reach the engine from anywhere but Last.fm itself (the browser extension's Deezer,
+ * SoundCloud, Bandcamp, ...) back to the listener's Last.fm account. Needs {@code lastfm_api_secret} plus a session
+ * key: {@code lastfm_session_key} for {@link NowPlayingService#LOCAL}, or the player's own one in
+ * {@link PlayerConfigStore}.
+ * <p>
+ * A track start is sent as {@code track.updateNowPlaying} (best effort, never retried). When the track ends after
+ * being played long enough (half its length or four minutes, 30 seconds if the length is unknown) it goes into the
+ * durable {@link ScrobbleQueue}, and a minute later is submitted with the rest of that player's queue in batches of
+ * up to 50. Failures back off exponentially with jitter and keep the plays queued, across restarts too.
+ * <p>
+ * Before submitting, plays the {@link LastFmPoller} has meanwhile seen scrobbled with the same start time (give or
+ * take {@value #DEDUPE_WINDOW_SECONDS} s) are dropped: another scrobbler already reported them. Everything runs on
+ * one worker thread; track changes and poll results are only handed over to it.
+ */
+public final class Scrobbler {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final String LASTFM_SOURCE = "Last.fm";
+    // Longer than the idle poll interval, so the poller has had a look at the user's recent tracks
+    private static final long SETTLE_MILLIS = 60_000L;
+    private static final long MIN_BACKOFF_MILLIS = 30_000L;
+    private static final long MAX_BACKOFF_MILLIS = 900_000L;
+    // Last.fm ignores scrobbles older than two weeks
+    private static final long MAX_AGE_SECONDS = 14L * 86_400L;
+    private static final int MAX_PENDING = 10_000;
+    private static final long DEDUPE_WINDOW_SECONDS = 30L;
+    private static final int REPORTS_PER_PLAYER = 8;
+
+    // Recently scrobbled tracks as seen by the poller, newest last; each deque is its own lock
+    private static final Map<UUID, ArrayDeque<LastFmClient.RecentTrack>> REPORTS = new ConcurrentHashMap<>();
+    // Sessions Last.fm rejected; their plays wait until the player sets a new session key
+    private static final Set<String> REJECTED_SESSIONS = ConcurrentHashMap.newKeySet();
+    // Worker thread only
+    private static final Map<UUID, Playing> PLAYING = new HashMap<>();
+    private static final Map<Long, Long> QUEUED_AT = new HashMap<>();
+    private static ScheduledFuture<?> submitTask;
+    private static boolean inFlight;
+    private static int failures;
+
+    private static volatile ScrobbleQueue queue;
+    private static volatile String apiSecret = "";
+    private static volatile String localSessionKey = "";
+    private static volatile String fallbackApiKey = "";
+    private static ScheduledExecutorService worker;
+
+    private Scrobbler() {}
+
+    /**
+     * Applies the secret and local session key; the first call with a secret opens the queue and starts listening.
+     * Anything still queued from an earlier run is submitted right away.
+     */
+    public static synchronized void configure(NowPlayingConfig cfg) throws IOException {
+        apiSecret = cfg.getLastfmApiSecret();
+        localSessionKey = cfg.getLastfmSessionKey();
+        fallbackApiKey = cfg.getLastfmApiKey();
+        if (apiSecret.isEmpty()) return;
+        if (queue == null) {
+            ScrobbleQueue q = new ScrobbleQueue(NowPlayingConfig.dataDir().resolve("scrobbles.log"));
+            queue = q;
+            NowPlayingMetrics.gauge("nowplaying_scrobble_queue_depth", "gauge", "Plays waiting to be scrobbled", q::size);
+            NowPlayingService.addListener(Scrobbler::onTrackChanged);
+        }
+        worker().execute(() -> scheduleSubmit(0L));
+    }
+
+    /** Stores a session key for {@code player} (for {@link NowPlayingService#LOCAL}: the caller saves the config). */
+    public static void updateSessionKey(UUID player, String sessionKey) {
+        String sk = sessionKey == null ? "" : sessionKey.trim();
+        if (NowPlayingService.LOCAL.equals(player)) {
+            localSessionKey = sk;
+        } else {
+            PlayerConfigStore.setLastfmSessionKey(player, sk);
+        }
+        if (queue != null) worker().execute(() -> scheduleSubmit(0L));
+    }
+
+    /** Called by the poller with every recent track it fetched; scrobbled ones are remembered for deduplication. */
+    static void reportedByLastFm(UUID key, LastFmClient.RecentTrack track) {
+        if (queue == null || track == null || track.scrobbledAt() == 0L || sessionKey(key) == null) return;
+        ArrayDeque<LastFmClient.RecentTrack> reports = REPORTS.computeIfAbsent(key, k -> new ArrayDeque<>());
+        synchronized (reports) {
+            if (track.equals(reports.peekLast())) return;
+            reports.addLast(track);
+            if (reports.size() > REPORTS_PER_PLAYER) reports.removeFirst();
+        }
+    }
+
+    private static void onTrackChanged(UUID key, NowPlayingService.Snapshot previous, NowPlayingService.Snapshot current) {
+        long now = System.currentTimeMillis();
+        worker().execute(() -> trackChanged(key, previous, current, now));
+    }
+
+    private static void trackChanged(UUID key, NowPlayingService.Snapshot previous, NowPlayingService.Snapshot current,
+                                     long now) {
+        Playing playing = PLAYING.get(key);
+        if (!current.isEmpty() && previous.title().equals(current.title())
+                && previous.artist().equals(current.artist())) {
+            // Metadata or another source for the same play: keep its start, pick up album and length
+            if (playing != null) PLAYING.put(key, playing.with(current.metadata()));
+            return;
+        }
+        if (playing != null) {
+            PLAYING.remove(key);
+            finish(key, playing, now);
+        }
+        // What the poller reports is already on Last.fm
+        if (current.isEmpty() || LASTFM_SOURCE.equals(current.source())) return;
+        String session = sessionKey(key);
+        if (session == null) return;
+        Playing next = new Playing(current.artist(), current.title(), now, current.metadata());
+        PLAYING.put(key, next);
+        announce(session, next);
+    }
+
+    private static void finish(UUID key, Playing playing, long now) {
+        long duration = playing.metadata().durationMillis();
+        if (duration > 0 && duration <= 30_000L) return;
+        long needed = duration > 0 ? Math.min(duration / 2, 240_000L) : 30_000L;
+        if (now - playing.startedAt() < needed) return;
+        ScrobbleQueue q = queue;
+        try {
+            ScrobbleQueue.Scrobble s = q.add(key, playing.startedAt() / 1000L, playing.artist(), playing.title(),
+                playing.metadata().album(), (int) (duration / 1000L));
+            QUEUED_AT.put(s.id(), now);
+            if (q.size() > MAX_PENDING) {
+                List<ScrobbleQueue.Scrobble> oldest = q.pending().subList(0, q.size() - MAX_PENDING);
+                q.remove(oldest);
+                oldest.forEach(o -> QUEUED_AT.remove(o.id()));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to queue scrobble of '{}'", playing.title(), e);
+            return;
+        }
+        scheduleSubmit(SETTLE_MILLIS);
+    }
+
+    private static void announce(String session, Playing playing) {
+        String apiKey = apiKey();
+        // Only worth sending right now; no waiting for budget
+        if (apiKey.isEmpty() || LastFmPoller.acquire(apiKey) > 0) return;
+        LastFmPoller.client().updateNowPlaying(apiKey, apiSecret, session, playing.artist(), playing.title(),
+                playing.metadata().album(), (int) (playing.metadata().durationMillis() / 1000L))
+            .whenComplete((ignored, error) -> {
+                if (error == null) return;
+                Throwable e = LastFmPoller.unwrap(error);
+                LastFmPoller.reportError(apiKey, e);
+                LOGGER.debug("Last.fm updateNowPlaying failed: {}", e.toString());
+            });
+    }
+
+    // Runs submit() after delayMillis, unless it is already due sooner
+    private static void scheduleSubmit(long delayMillis) {
+        if (queue == null || inFlight) return;
+        if (submitTask != null && !submitTask.isDone()) {
+            if (submitTask.getDelay(TimeUnit.MILLISECONDS) <= delayMillis) return;
+            submitTask.cancel(false);
+        }
+        submitTask = worker().schedule(Scrobbler::submit, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void submit() {
+        submitTask = null;
+        ScrobbleQueue q = queue;
+        String apiKey = apiKey();
+        String secret = apiSecret;
+        if (q == null || inFlight || apiKey.isEmpty() || secret.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        long nextDue = -1L;
+        List<ScrobbleQueue.Scrobble> drop = new ArrayList<>();
+        Map<UUID, List<ScrobbleQueue.Scrobble>> ready = new LinkedHashMap<>();
+        for (ScrobbleQueue.Scrobble s : q.pending()) {
+            Long queuedAt = QUEUED_AT.get(s.id());
+            if (queuedAt != null && now - queuedAt < SETTLE_MILLIS) {
+                long due = queuedAt + SETTLE_MILLIS - now;
+                nextDue = nextDue < 0 ? due : Math.min(nextDue, due);
+                continue;
+            }
+            if (now / 1000L - s.timestamp() > MAX_AGE_SECONDS || scrobbledElsewhere(s)) {
+                drop.add(s);
+                continue;
+            }
+            String session = sessionKey(s.player());
+            // No usable session (yet): the play stays queued
+            if (session == null || REJECTED_SESSIONS.contains(session)) continue;
+            ready.computeIfAbsent(s.player(), k -> new ArrayList<>()).add(s);
+        }
+        done(drop);
+        if (ready.isEmpty()) {
+            if (nextDue >= 0) scheduleSubmit(nextDue);
+            return;
+        }
+        Map.Entry<UUID, List<ScrobbleQueue.Scrobble>> first = ready.entrySet().iterator().next();
+        List<ScrobbleQueue.Scrobble> plays = first.getValue();
+        List<ScrobbleQueue.Scrobble> batch =
+            List.copyOf(plays.subList(0, Math.min(plays.size(), LastFmClient.MAX_SCROBBLES_PER_REQUEST)));
+        long waitNanos = LastFmPoller.acquire(apiKey);
+        if (waitNanos > 0) {
+            scheduleSubmit(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+            return;
+        }
+        String session = sessionKey(first.getKey());
+        inFlight = true;
+        LastFmPoller.client().scrobble(apiKey, secret, session, batch)
+            .whenComplete((accepted, error) -> worker().execute(() -> submitted(batch, apiKey, session, accepted, error)));
+    }
+
+    private static void submitted(List<ScrobbleQueue.Scrobble> batch, String apiKey, String session, Integer accepted,
+                                  Throwable error) {
+        inFlight = false;
+        if (error == null) {
+            failures = 0;
+            LOGGER.debug("Scrobbled {} plays, {} accepted", batch.size(), accepted);
+            done(batch);
+            scheduleSubmit(0L);
+            return;
+        }
+        Throwable e = LastFmPoller.unwrap(error);
+        if (e instanceof LastFmException le) {
+            if (le.getErrorCode() == LastFmException.INVALID_PARAMETERS) {
+                // Would fail the same way forever
+                LOGGER.warn("Last.fm refused {} scrobbles, dropping them: {}", batch.size(), le.getMessage());
+                done(batch);
+                scheduleSubmit(0L);
+                return;
+            }
+            if (le.getErrorCode() == LastFmException.INVALID_SESSION_KEY) {
+                LOGGER.warn("Last.fm rejected the session key of {}; its scrobbles stay queued until a new one is set",
+                    batch.get(0).player());
+                REJECTED_SESSIONS.add(session);
+                scheduleSubmit(0L);
+                return;
+            }
+            LastFmPoller.reportError(apiKey, le);
+        }
+        int n = ++failures;
+        LOGGER.warn("Scrobbling failed ({} in a row), {} plays queued: {}", n, queue.size(), e.toString());
+        // Exponential backoff with "equal jitter", as in the poller
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(n - 1, 5));
+        scheduleSubmit(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+    }
+
+    private static void done(List<ScrobbleQueue.Scrobble> plays) {
+        if (plays.isEmpty()) return;
+        try {
+            queue.remove(plays);
+            plays.forEach(s -> QUEUED_AT.remove(s.id()));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to update the scrobble queue", e);
+        }
+    }
+
+    private static boolean scrobbledElsewhere(ScrobbleQueue.Scrobble s) {
+        ArrayDeque<LastFmClient.RecentTrack> reports = REPORTS.get(s.player());
+        if (reports == null) return false;
+        synchronized (reports) {
+            for (LastFmClient.RecentTrack r : reports) {
+                if (Math.abs(r.scrobbledAt() - s.timestamp()) < DEDUPE_WINDOW_SECONDS
+                        && r.title().equalsIgnoreCase(s.title()) && r.artist().equalsIgnoreCase(s.artist())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String sessionKey(UUID key) {
+        String sk = NowPlayingService.LOCAL.equals(key) ? localSessionKey : PlayerConfigStore.getLastfmSessionKey(key);
+        return sk.isEmpty() ? null : sk;
+    }
+
+    private static String apiKey() {
+        String key = LastFmPoller.apiKey();
+        return key != null && !key.isBlank() ? key : fallbackApiKey;
+    }
+
+    private static synchronized ScheduledExecutorService worker() {
+        if (worker == null) {
+            worker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "nowplaying-scrobbler");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return worker;
+    }
+
+    /** The play in progress for one key; {@code startedAt} in epoch millis. */
+    private record Playing(String artist, String title, long startedAt, TrackMetadata metadata) {
+        Playing with(TrackMetadata metadata) {
+            return new Playing(artist, title, startedAt, metadata);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.nowplaying;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges updates from several browser sources (tabs, services) into the one state shown per player.
+ * Each source keeps only its newest update by client timestamp, so a late or reordered request cannot roll it back.
+ * The shown source is a playing one, ranked by {@code source_priority}, then by recency, then by name;
+ * if no source is playing the player is cleared.
+ */
+final class SourceArbiter {
+    private static final long SOURCE_TTL_MILLIS = Duration.ofMinutes(30).toMillis();
+    private static final int MAX_SOURCES = 16;
+    private static final long SWEEP_INTERVAL_MILLIS = Duration.ofMinutes(5).toMillis();
+
+    private static final Map<UUID, Map<String, SourceUpdate>> SOURCES = new ConcurrentHashMap<>();
+    private static final AtomicLong nextSweepAt = new AtomicLong(System.currentTimeMillis() + SWEEP_INTERVAL_MILLIS);
+    private static volatile List<String> priority = List.of();
+
+    private SourceArbiter() {}
+
+    static void configure(NowPlayingConfig cfg) {
+        List<String> order = new ArrayList<>();
+        for (String source : cfg.getSourcePriority().split(",")) {
+            if (!source.isBlank()) order.add(source.trim().toLowerCase(Locale.ROOT));
+        }
+        priority = List.copyOf(order);
+    }
+
+    /** Applies the updates in order; later updates win ties. */
+    static void apply(List<SourceUpdate> updates) {
+        Map<UUID, List<SourceUpdate>> byPlayer = new LinkedHashMap<>();
+        for (SourceUpdate u : updates) {
+            byPlayer.computeIfAbsent(u.player(), k -> new ArrayList<>()).add(u);
+        }
+        long now = System.currentTimeMillis();
+        // The state is published inside compute so concurrent batches for one player cannot publish out of order
+        byPlayer.forEach((player, batch) -> SOURCES.compute(player, (k, current) -> {
+            Map<String, SourceUpdate> sources = current == null ? new HashMap<>() : new HashMap<>(current);
+            sources.values().removeIf(u -> now - u.receivedAt() > SOURCE_TTL_MILLIS);
+            for (SourceUpdate u : batch) {
+                SourceUpdate existing = sources.get(u.source());
+                if (existing == null || u.timestamp() >= existing.timestamp()) {
+                    sources.put(u.source(), u);
+                }
+            }
+            if (sources.size() > MAX_SOURCES) {
+                List<SourceUpdate> oldest = new ArrayList<>(sources.values());
+                oldest.sort(Comparator.comparingLong(SourceUpdate::receivedAt));
+                oldest.subList(0, sources.size() - MAX_SOURCES).forEach(u -> sources.remove(u.source()));
+            }
+            publish(player, sources);
+            return sources.isEmpty() ? null : Map.copyOf(sources);
+        }));
+        maybeSweep(now);
+    }
+
+    static void clear(UUID player) {
+        SOURCES.remove(player);
+    }
+
+    // Players that stopped sending (closed browser, disconnected) would otherwise keep their sources forever
+    private static void maybeSweep(long now) {
+        long due = nextSweepAt.get();
+        if (now < due || !nextSweepAt.compareAndSet(due, now + SWEEP_INTERVAL_MILLIS)) return;
+        SOURCES.values().removeIf(sources -> sources.values().stream().allMatch(u -> now - u.receivedAt() > SOURCE_TTL_MILLIS));
+    }
+
+    private static void publish(UUID player, Map<String, SourceUpdate> sources) {
+        SourceUpdate winner = sources.values().stream()
+            .filter(SourceUpdate::playing)
+            .max(Comparator.comparingInt((SourceUpdate u) -> -rank(u.source()))
+                .thenComparingLong(SourceUpdate::timestamp)
+                .thenComparing(SourceUpdate::source))
+            .orElse(null);
+        if (winner == null) {
+            NowPlayingService.clear(player);
+        } else {
+            NowPlayingService.update(player, winner.title(), winner.artist(), winner.source());
+        }
+    }
+
+    private static int rank(String source) {
+        int i = priority.indexOf(source.toLowerCase(Locale.ROOT));
+        return i < 0 ? priority.size() : i;
+    }
+
+    /**
+     * One source's report. {@code timestamp} is the client clock, clamped to the server clock so a fast client
+     * cannot pin its source; {@code receivedAt} is the server clock and only drives expiry.
+     */
+    record SourceUpdate(UUID player, String source, String title, String artist, boolean playing,
+                        long timestamp, long receivedAt) {
+        static SourceUpdate of(UUID player, String source, String title, String artist, boolean playing,
+                               Long clientTimestamp) {
+            long now = System.currentTimeMillis();
+            long ts = clientTimestamp == null ? now : Math.min(clientTimestamp, now);
+            boolean shown = playing && !(title.isEmpty() && artist.isEmpty());
+            return new SourceUpdate(player, source, title, artist, shown, ts, now);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.nowplaying;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel for many timers with coarse deadlines, such as one poll per Last.fm user. Scheduling and
+ * cancelling are O(1): a timer is linked into a slot of the level whose span covers its delay and unlinked again on
+ * cancel, instead of being sifted through a heap as in {@link java.util.concurrent.ScheduledThreadPoolExecutor}.
+ * Level 0 has one slot per tick; each level above is {@code slots} times coarser, and its timers move down (cascade)
+ * when their slot comes up, so every timer is touched at most once per level.
+ * <p>
+ * One ticker thread advances the wheel, sleeping while it is empty, and hands due timers to the executor, so a slow
+ * task never holds up other timers. Deadlines are rounded up to the next tick.
+ */
+final class TimingWheel implements Closeable {
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+    private final int bits;
+    private final long mask;
+    private final long maxTicks;
+    // One sentinel per slot heads a circular doubly-linked list of its timers
+    private final Timeout[][] slots;
+    private final Executor executor;
+    private final Thread ticker;
+    private final long startNanos = System.nanoTime();
+    // Guarded by this
+    private long currentTick;
+    private int size;
+    private boolean closed;
+
+    TimingWheel(long tickMillis, int slotsPerLevel, Executor executor, String threadName) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        if (slotsPerLevel < 2 || Integer.bitCount(slotsPerLevel) != 1) {
+            throw new IllegalArgumentException("slotsPerLevel must be a power of two: " + slotsPerLevel);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.bits = Integer.numberOfTrailingZeros(slotsPerLevel);
+        this.mask = slotsPerLevel - 1;
+        this.maxTicks = bits * LEVELS >= 63 ? Long.MAX_VALUE : 1L << (bits * LEVELS);
+        this.executor = executor;
+        this.slots = new Timeout[LEVELS][slotsPerLevel];
+        for (Timeout[] level : slots) {
+            for (int i = 0; i < level.length; i++) level[i] = Timeout.sentinel();
+        }
+        this.ticker = new Thread(this::run, threadName);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /** Runs {@code task} on the executor once {@code delay} has passed. */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadlineNanos = System.nanoTime() - startNanos + unit.toNanos(Math.max(0L, delay));
+        Timeout t = new Timeout(this, task);
+        synchronized (this) {
+            if (closed) throw new RejectedExecutionException("Timing wheel is closed");
+            // The tick being processed (or already past) is too late; the next one is the earliest possible
+            t.deadlineTick = Math.max(currentTick + 1, Math.ceilDiv(deadlineNanos, tickNanos));
+            insert(t);
+            if (size++ == 0) notifyAll();
+        }
+        return t;
+    }
+
+    /** Timers scheduled and not yet due or cancelled. */
+    synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    // Links t into the slot that comes up at or before its deadline, but only after the current tick
+    private void insert(Timeout t) {
+        long delta = Math.min(t.deadlineTick - currentTick, maxTicks - 1);
+        long tick = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (bits * (level + 1))) level++;
+        t.link(slots[level][(int) ((tick >>> (bits * level)) & mask)]);
+    }
+
+    private void run() {
+        List<Timeout> due = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!awaitTick()) return;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long target = (System.nanoTime() - startNanos) / tickNanos;
+                while (currentTick < target) advance(due);
+            }
+            for (Timeout t : due) {
+                try {
+                    executor.execute(t.task);
+                } catch (RejectedExecutionException ignored) {
+                    // Executor shut down: nothing left to run timers on
+                }
+            }
+            due.clear();
+        }
+    }
+
+    // Sleeps until the next tick is due (or, while empty, until something is scheduled); false once closed
+    private boolean awaitTick() throws InterruptedException {
+        while (!closed) {
+            long elapsedTicks = (System.nanoTime() - startNanos) / tickNanos;
+            if (size == 0) {
+                // Nothing to cascade or expire: skip the idle ticks rather than walking through them
+                currentTick = Math.max(currentTick, elapsedTicks);
+                wait();
+                continue;
+            }
+            if (elapsedTicks > currentTick) return true;
+            long nextTickNanos = startNanos + (currentTick + 1) * tickNanos;
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(1L, nextTickNanos - System.nanoTime()));
+        }
+        return false;
+    }
+
+    private void advance(List<Timeout> due) {
+        long tick = ++currentTick;
+        // Coarsest first, so timers cascading from a high level can drop all the way down within this tick
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (bits * level)) - 1)) == 0) {
+                for (Timeout t = slots[level][(int) ((tick >>> (bits * level)) & mask)].detachAll(); t != null; ) {
+                    Timeout next = t.next;
+                    insert(t);
+                    t = next;
+                }
+            }
+        }
+        for (Timeout t = slots[0][(int) (tick & mask)].detachAll(); t != null; ) {
+            Timeout next = t.next;
+            if (t.deadlineTick <= tick) {
+                t.state = Timeout.EXPIRED;
+                t.next = t.prev = null;
+                size--;
+                due.add(t);
+            } else {
+                // Only a deadline beyond the top level's span gets here early
+                insert(t);
+            }
+            t = next;
+        }
+    }
+
+    /** Handle of a scheduled task. */
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        // Guarded by the wheel
+        private long deadlineTick;
+        private int state;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+        }
+
+        private static Timeout sentinel() {
+            Timeout head = new Timeout(null, null);
+            head.prev = head.next = head;
+            return head;
+        }
+
+        /** Stops the task from running; false if it already ran (or is about to) or was cancelled before. */
+        boolean cancel() {
+            synchronized (wheel) {
+                if (state != PENDING) return false;
+                state = CANCELLED;
+                prev.next = next;
+                next.prev = prev;
+                prev = next = null;
+                wheel.size--;
+                return true;
+            }
+        }
+
+        boolean isCancelled() {
+            synchronized (wheel) {
+                return state == CANCELLED;
+            }
+        }
+
+        private void link(Timeout head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        // On a sentinel: empties the slot and returns its first timer; the chain ends in null instead of the head
+        private Timeout detachAll() {
+            if (next == this) return null;
+            Timeout first = next;
+            prev.next = null;
+            prev = next = this;
+            return first;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.nowplaying;
+
+import java.time.Duration;
+
+/**
+ * Token bucket guarding the request budget of one Last.fm API key.
+ * Callers never block: {@link #tryAcquire()} either takes a token or says how long to wait for one.
+ */
+final class TokenBucket {
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+    private long pausedUntil;
+
+    TokenBucket(double permitsPerSecond, int burst) {
+        this.ratePerNano = permitsPerSecond / 1_000_000_000d;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+        this.pausedUntil = refilledAt;
+    }
+
+    /** Takes one token; returns 0 on success, otherwise the nanoseconds until a token is available. */
+    synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        refill(now);
+        if (now - pausedUntil < 0) return pausedUntil - now;
+        if (tokens >= 1d) {
+            tokens -= 1d;
+            return 0L;
+        }
+        return (long) Math.ceil((1d - tokens) / ratePerNano);
+    }
+
+    /** Tokens left right now; 0 while paused. */
+    synchronized double available() {
+        long now = System.nanoTime();
+        refill(now);
+        return now - pausedUntil < 0 ? 0d : tokens;
+    }
+
+    /** Empties the bucket and refuses tokens for {@code duration}, e.g. after the API reported a rate limit. */
+    synchronized void pause(Duration duration) {
+        long now = System.nanoTime();
+        refill(now);
+        tokens = 0d;
+        long until = now + duration.toNanos();
+        if (until - pausedUntil > 0) pausedUntil = until;
+    }
+
+    double getPermitsPerSecond() {
+        return ratePerNano * 1_000_000_000d;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.nowplaying;
+
+/**
+ * Details about a track from Last.fm's {@code track.getInfo}; {@link #NONE} when nothing is known (yet).
+ */
+public record TrackMetadata(String album, long durationMillis, String artworkUrl, long playCount) {
+    public static final TrackMetadata NONE = new TrackMetadata("", 0L, "", 0L);
+
+    public boolean isEmpty() {
+        return equals(NONE);
+    }
+}
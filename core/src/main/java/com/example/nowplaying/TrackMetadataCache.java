@@ -0,0 +1,260 @@
+package com.example.nowplaying;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Enriches the now-playing state with album, duration, artwork and play count from Last.fm's {@code track.getInfo}.
+ * It stays off the poll path: track changes from {@link NowPlayingService} are answered from a bounded LRU when
+ * possible, otherwise fetched asynchronously within the poller's request budget, and the result is attached to the
+ * state once it arrives. Unknown tracks are remembered too, so they are not asked for again.
+ * <p>
+ * The LRU is saved to {@code youtube-music-nowplaying/track-metadata.bin} in the config directory shortly after it
+ * changes and on {@link #flush()}, and read back on start, so restarts begin warm.
+ */
+public final class TrackMetadataCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger("modid");
+    private static final int MAGIC = 0x4E504D31; // "NPM1"
+    private static final long MAX_AGE_MILLIS = Duration.ofDays(7).toMillis();
+    private static final long SAVE_DELAY_SECONDS = 30;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_TEXT = 2048; // keeps every string within writeUTF's limit
+
+    private static final Map<TrackKey, CompletableFuture<TrackMetadata>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final AtomicBoolean SAVE_SCHEDULED = new AtomicBoolean();
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    // One save at a time: the worker's and the shutdown flush would otherwise write the same .tmp file together
+    private static final Object SAVE_LOCK = new Object();
+    // Access order; guarded by the class lock
+    private static final LinkedHashMap<TrackKey, Entry> LRU = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TrackKey, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private static volatile int maxEntries;
+    private static volatile boolean dirty;
+    private static ScheduledExecutorService worker;
+
+    private TrackMetadataCache() {}
+
+    /** Applies {@code track_metadata_cache_size}; the first call with a non-zero size starts enrichment. */
+    static void configure(NowPlayingConfig cfg) {
+        maxEntries = cfg.getTrackMetadataCacheSize();
+        synchronized (TrackMetadataCache.class) {
+            while (LRU.size() > maxEntries) {
+                LRU.remove(LRU.keySet().iterator().next());
+            }
+        }
+        if (maxEntries > 0 && STARTED.compareAndSet(false, true)) {
+            worker().execute(TrackMetadataCache::load);
+            NowPlayingService.addListener(TrackMetadataCache::onTrackChanged);
+        }
+    }
+
+    /** Writes the cache to disk now if it changed since the last save. */
+    public static void flush() {
+        synchronized (SAVE_LOCK) {
+            if (!dirty) return;
+            dirty = false;
+            List<Map.Entry<TrackKey, Entry>> entries;
+            synchronized (TrackMetadataCache.class) {
+                entries = new ArrayList<>(LRU.entrySet());
+            }
+            try {
+                save(entries);
+                LOGGER.debug("Saved {} track metadata entries", entries.size());
+            } catch (IOException e) {
+                dirty = true;
+                LOGGER.warn("Failed to save track metadata cache", e);
+            }
+        }
+    }
+
+    private static void onTrackChanged(UUID key, NowPlayingService.Snapshot previous, NowPlayingService.Snapshot current) {
+        if (maxEntries == 0 || current.isEmpty() || !current.metadata().isEmpty()) return;
+        TrackKey track = TrackKey.of(current.artist(), current.title());
+        TrackMetadata cached = lookup(track);
+        if (cached != null) {
+            if (!cached.isEmpty()) NowPlayingService.attachMetadata(key, current.title(), current.artist(), cached);
+            return;
+        }
+        // Players on the same track share one request
+        CompletableFuture<TrackMetadata> pending = IN_FLIGHT.computeIfAbsent(track, k -> {
+            CompletableFuture<TrackMetadata> f = new CompletableFuture<>();
+            worker().execute(() -> request(k, current.artist(), current.title(), f, 1));
+            return f;
+        });
+        pending.whenComplete((meta, error) -> IN_FLIGHT.remove(track, pending));
+        pending.thenAccept(meta -> {
+            if (!meta.isEmpty()) NowPlayingService.attachMetadata(key, current.title(), current.artist(), meta);
+        });
+    }
+
+    private static void request(TrackKey track, String artist, String title, CompletableFuture<TrackMetadata> result,
+                                int attempt) {
+        ApiKeyPool.Permit permit = LastFmPoller.acquire();
+        if (permit.apiKey() == null) {
+            result.complete(TrackMetadata.NONE);
+            return;
+        }
+        long waitNanos = permit.waitNanos();
+        if (waitNanos > 0) {
+            // Polls come first; give up for now and try again the next time the track plays
+            if (attempt >= MAX_ATTEMPTS) {
+                result.complete(TrackMetadata.NONE);
+            } else {
+                worker().schedule(() -> request(track, artist, title, result, attempt + 1),
+                    TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        String apiKey = permit.apiKey();
+        LastFmPoller.client().trackInfo(apiKey, artist, title).whenComplete((meta, error) -> {
+            if (error == null) {
+                store(track, meta);
+                result.complete(meta);
+                return;
+            }
+            Throwable cause = LastFmPoller.unwrap(error);
+            if (cause instanceof LastFmException e) {
+                if (e.getErrorCode() == LastFmException.INVALID_PARAMETERS) {
+                    store(track, TrackMetadata.NONE);
+                } else {
+                    LastFmPoller.reportError(apiKey, e);
+                }
+            }
+            LOGGER.debug("track.getInfo for '{}' - '{}' failed: {}", artist, title, cause.toString());
+            result.complete(TrackMetadata.NONE);
+        });
+    }
+
+    private static synchronized TrackMetadata lookup(TrackKey track) {
+        Entry e = LRU.get(track);
+        if (e == null) return null;
+        if (System.currentTimeMillis() - e.fetchedAt() > MAX_AGE_MILLIS) {
+            LRU.remove(track);
+            return null;
+        }
+        return e.metadata();
+    }
+
+    private static void store(TrackKey track, TrackMetadata metadata) {
+        if (metadata.album().length() > MAX_TEXT || metadata.artworkUrl().length() > MAX_TEXT) {
+            metadata = new TrackMetadata(truncate(metadata.album()), metadata.durationMillis(),
+                truncate(metadata.artworkUrl()), metadata.playCount());
+        }
+        synchronized (TrackMetadataCache.class) {
+            LRU.put(track, new Entry(metadata, System.currentTimeMillis()));
+        }
+        dirty = true;
+        if (SAVE_SCHEDULED.compareAndSet(false, true)) {
+            worker().schedule(() -> {
+                SAVE_SCHEDULED.set(false);
+                flush();
+            }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void load() {
+        Path file = file();
+        if (!Files.exists(file)) return;
+        long now = System.currentTimeMillis();
+        Map<TrackKey, Entry> loaded = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a track metadata cache: " + file);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                TrackKey track = new TrackKey(in.readUTF(), in.readUTF());
+                TrackMetadata metadata = new TrackMetadata(in.readUTF(), in.readLong(), in.readUTF(), in.readLong());
+                long fetchedAt = in.readLong();
+                if (now - fetchedAt <= MAX_AGE_MILLIS) loaded.put(track, new Entry(metadata, fetchedAt));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring unreadable track metadata cache {}", file, e);
+            return;
+        }
+        synchronized (TrackMetadataCache.class) {
+            // Anything fetched while loading is newer than the file
+            loaded.forEach(LRU::putIfAbsent);
+        }
+        LOGGER.debug("Loaded {} track metadata entries", loaded.size());
+    }
+
+    // Saved oldest access first, so reading it back restores the LRU order
+    private static void save(List<Map.Entry<TrackKey, Entry>> entries) throws IOException {
+        Path file = file();
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<TrackKey, Entry> e : entries) {
+                TrackMetadata m = e.getValue().metadata();
+                out.writeUTF(e.getKey().artist());
+                out.writeUTF(e.getKey().title());
+                out.writeUTF(m.album());
+                out.writeLong(m.durationMillis());
+                out.writeUTF(m.artworkUrl());
+                out.writeLong(m.playCount());
+                out.writeLong(e.getValue().fetchedAt());
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String truncate(String s) {
+        return s.length() > MAX_TEXT ? s.substring(0, MAX_TEXT) : s;
+    }
+
+    private static synchronized ScheduledExecutorService worker() {
+        if (worker == null) {
+            worker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "nowplaying-metadata");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return worker;
+    }
+
+    private static Path file() {
+        return NowPlayingConfig.dataDir().resolve("track-metadata.bin");
+    }
+
+    /** Case-insensitive identity of a track. */
+    private record TrackKey(String artist, String title) {
+        static TrackKey of(String artist, String title) {
+            return new TrackKey(artist.toLowerCase(Locale.ROOT), title.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private record Entry(TrackMetadata metadata, long fetchedAt) {}
+}
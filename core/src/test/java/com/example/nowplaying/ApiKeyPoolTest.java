@@ -0,0 +1,51 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApiKeyPoolTest {
+    @Test
+    void noSharedKeysIsNoKey() {
+        ApiKeyPool keys = new ApiKeyPool(5d);
+        assertSame(ApiKeyPool.Permit.NO_KEY, keys.acquire());
+    }
+
+    @Test
+    void quarantinedOwnKeyWaitsForTheQuarantineToEnd() {
+        ApiKeyPool keys = new ApiKeyPool(5d);
+        keys.failed("own-key", new LastFmException(200, LastFmException.INVALID_API_KEY, "Invalid API key"));
+        assertFalse(keys.isAvailable("own-key"));
+        ApiKeyPool.Permit permit = keys.acquire("own-key");
+        assertFalse(permit.granted());
+        assertTrue(permit.waitNanos() > ApiKeyPool.INVALID_KEY_QUARANTINE_NANOS / 2, "waits " + permit.waitNanos());
+    }
+
+    @Test
+    void sharedKeysTakeTurnsAndSkipQuarantinedOnes() {
+        ApiKeyPool keys = new ApiKeyPool(5d);
+        keys.setPrimary("primary");
+        keys.setExtra(ApiKeyPool.parse("extra-1, extra-2 extra-1"));
+        assertEquals(3, keys.sharedCount());
+
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 6; i++) used.add(keys.acquire().apiKey());
+        assertEquals(Set.of("primary", "extra-1", "extra-2"), used);
+
+        keys.failed("extra-2", new LastFmException(429, 0, "Too Many Requests"));
+        for (int i = 0; i < 6; i++) assertFalse("extra-2".equals(keys.acquire().apiKey()));
+    }
+
+    @Test
+    void maskShowsOnlyTheLastFourCharacters() {
+        assertEquals("...cdef", ApiKeyPool.mask("0123456789abcdef"));
+        assertEquals(List.of("a", "b"), ApiKeyPool.parse(" a,,b a "));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConfigManagerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void reloadFillsMissingSettingsFromDefaults() throws IOException {
+        NowPlayingConfig.setConfigDirProvider(() -> dir);
+        // What config files looked like before most settings existed
+        write("lastfm_username=alice\nlastfm_api_key=0123456789abcdef\n");
+        ConfigManager.reload();
+
+        NowPlayingConfig cfg = ConfigManager.get();
+        assertEquals("alice", cfg.getLastfmUsername());
+        assertEquals("0123456789abcdef", cfg.getLastfmApiKey());
+        assertEquals(new NowPlayingConfig().getPollIntervalSeconds(), cfg.getPollIntervalSeconds());
+        assertEquals(new NowPlayingConfig().getHttpPort(), cfg.getHttpPort());
+    }
+
+    @Test
+    void reloadKeepsTheCurrentSnapshotForAHalfWrittenFile() throws IOException {
+        NowPlayingConfig.setConfigDirProvider(() -> dir);
+        write("lastfm_username=alice\nhttp_port=18080\n");
+        ConfigManager.reload();
+        assertEquals(18080, ConfigManager.get().getHttpPort());
+
+        write("");
+        ConfigManager.reload();
+        assertEquals("alice", ConfigManager.get().getLastfmUsername());
+
+        write("lastfm_username=bob\nhttp_port=18x");
+        ConfigManager.reload();
+        assertEquals("alice", ConfigManager.get().getLastfmUsername());
+        assertEquals(18080, ConfigManager.get().getHttpPort());
+    }
+
+    private void write(String content) throws IOException {
+        Files.writeString(NowPlayingConfig.configPath(), content);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FormatTemplateTest {
+    private static final NowPlayingService.Snapshot TRACK = new NowPlayingService.Snapshot("One More Time", "Daft Punk",
+        "YouTube Music", Instant.EPOCH, 1L, new TrackMetadata("Discovery", 320_500L, "", 42L));
+
+    @Test
+    void defaultReproducesTheOriginalMessage() {
+        FormatTemplate t = FormatTemplate.compile(null);
+        assertEquals("Now Playing: Daft Punk — One More Time [YouTube Music]", t.render(TRACK));
+    }
+
+    @Test
+    void emptyFieldsDropTheirPrefixAndSuffix() {
+        FormatTemplate t = FormatTemplate.compile(FormatTemplate.DEFAULT);
+        NowPlayingService.Snapshot bare = new NowPlayingService.Snapshot("Untitled", "", "", Instant.EPOCH, 1L,
+            TrackMetadata.NONE);
+        assertEquals("Now Playing: Untitled", t.render(bare));
+    }
+
+    @Test
+    void metadataFields() {
+        FormatTemplate t = FormatTemplate.compile("{title}{ (|album|)}{ |duration|}{, |playcount| plays}");
+        assertEquals("One More Time (Discovery) 5:20, 42 plays", t.render(TRACK));
+    }
+
+    @Test
+    void unknownFieldsAndStrayBracesAreCopied() {
+        FormatTemplate t = FormatTemplate.compile("{mood} {a|b|c|d} {title");
+        assertEquals("{mood} {a|b|c|d} {title", t.render(TRACK));
+    }
+
+    @Test
+    void emptySnapshotRendersAsNothing() {
+        assertEquals("", FormatTemplate.compile("x{title}x").render(NowPlayingService.Snapshot.EMPTY));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HistoryLogTest {
+    private static final UUID PLAYER = new UUID(1L, 1L);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tornTailsAreCutOffAndLaterAppendsStayAligned() throws IOException {
+        long now = System.currentTimeMillis();
+        try (HistoryLog log = new HistoryLog(dir)) {
+            log.append(now - 2_000L, PLAYER, "Daft Punk", "One More Time");
+            log.append(now - 1_000L, PLAYER, "Justice", "D.A.N.C.E.");
+            log.flush();
+        }
+        Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.filter(f -> f.getFileName().toString().startsWith("plays-")).findFirst().orElseThrow();
+        }
+        long segmentSize = Files.size(segment);
+        long titlesSize = Files.size(dir.resolve("titles.dict"));
+        // A crash mid-append: part of a record, and a dictionary entry whose bytes never arrived
+        Files.write(segment, new byte[] {1, 2, 3, 4, 5, 6, 7}, StandardOpenOption.APPEND);
+        Files.write(dir.resolve("titles.dict"), new byte[] {0, 40, 'x', 'y'}, StandardOpenOption.APPEND);
+
+        try (HistoryLog log = new HistoryLog(dir)) {
+            assertEquals(segmentSize, Files.size(segment));
+            assertEquals(titlesSize, Files.size(dir.resolve("titles.dict")));
+            assertEquals(List.of("D.A.N.C.E.", "One More Time"), titles(log.recent(PLAYER, 10)));
+            log.append(now, PLAYER, "Daft Punk", "Digital Love");
+            log.flush();
+        }
+        try (HistoryLog log = new HistoryLog(dir)) {
+            List<ListeningHistory.Play> plays = log.recent(PLAYER, 10);
+            assertEquals(List.of("Digital Love", "D.A.N.C.E.", "One More Time"), titles(plays));
+            assertEquals("Daft Punk", plays.get(0).artist());
+        }
+    }
+
+    @Test
+    void recordsPointingPastADictionaryAreSkipped() throws IOException {
+        long now = System.currentTimeMillis();
+        try (HistoryLog log = new HistoryLog(dir)) {
+            log.append(now - 1_000L, PLAYER, "Daft Punk", "One More Time");
+            log.append(now, PLAYER, "Daft Punk", "Aerodynamic");
+            log.flush();
+        }
+        // The second title's entry is lost, as if the crash hit between the dictionary and the segment
+        Path titles = dir.resolve("titles.dict");
+        Files.write(titles, Arrays.copyOf(Files.readAllBytes(titles), 2 + "One More Time".length()));
+
+        try (HistoryLog log = new HistoryLog(dir)) {
+            assertEquals(List.of("One More Time"), titles(log.recent(PLAYER, 10)));
+        }
+    }
+
+    private static List<String> titles(List<ListeningHistory.Play> plays) {
+        return plays.stream().map(ListeningHistory.Play::title).toList();
+    }
+}
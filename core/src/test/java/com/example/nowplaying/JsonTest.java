@@ -0,0 +1,84 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonTest {
+    @Test
+    void escapeRoundTripsEveryControlCharacter() throws IOException {
+        StringBuilder sb = new StringBuilder("quote \" backslash \\ slash / ");
+        for (char c = 0; c < 0x20; c++) sb.append(c);
+        sb.append(" ünïcödé — ♪ 🎵");
+        String value = sb.toString();
+
+        String escaped = NowPlayingHttpServer.Json.escape(value);
+        for (int i = 0; i < escaped.length(); i++) {
+            assertTrue(escaped.charAt(i) >= 0x20, "raw control character at " + i);
+        }
+        assertEquals(value, readString("\"" + escaped + "\""));
+    }
+
+    @Test
+    void escapeUsesShortFormsWhereJsonHasThem() {
+        assertEquals("a\\nb\\rc\\td\\u0001e\\u001f", NowPlayingHttpServer.Json.escape("a\nb\rc\td\u0001e\u001f"));
+    }
+
+    @Test
+    void escapeReturnsPlainStringsAsIs() {
+        String plain = "Daft Punk — One More Time";
+        assertSame(plain, NowPlayingHttpServer.Json.escape(plain));
+    }
+
+    @Test
+    void toJsonStaysOnOneLine() throws IOException {
+        NowPlayingService.Snapshot s = new NowPlayingService.Snapshot("line\nbreak", "tab\there", "web",
+            Instant.EPOCH, 1L, TrackMetadata.NONE);
+        String json = NowPlayingHttpServer.toJson(s);
+        assertTrue(json.indexOf('\n') < 0 && json.indexOf('\r') < 0, json);
+        Map<String, String> fields = NowPlayingHttpServer.Json.parseFlatStringMap(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("line\nbreak", fields.get("title"));
+        assertEquals("tab\there", fields.get("artist"));
+    }
+
+    @Test
+    void readerSkipsNestedValues() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(
+            "{\"skip\":{\"a\":[1,2,{\"b\":null}],\"c\":true},\"keep\":\"\\u00e9\\\"x\"}"));
+        reader.beginObject();
+        assertEquals("skip", reader.nextName());
+        reader.skipValue();
+        assertEquals("keep", reader.nextName());
+        assertEquals("é\"x", reader.nextString());
+        reader.endObject();
+        assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    void readerRejectsUnterminatedStrings() {
+        assertThrows(IOException.class, () -> readString("\"open"));
+    }
+
+    @Test
+    void requestBodyMustBeAnObject() {
+        for (String body : new String[] {"", "   ", "[]", "\"title\"", "42", "null"}) {
+            assertThrows(IOException.class, () -> NowPlayingHttpServer.Json.parseFlatStringMap(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))), "accepted <" + body + ">");
+        }
+    }
+
+    private static String readString(String json) throws IOException {
+        return new JsonReader(new StringReader(json)).nextString();
+    }
+}
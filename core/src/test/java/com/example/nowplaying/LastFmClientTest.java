@@ -0,0 +1,95 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LastFmClientTest {
+    @Test
+    void recentTracksErrorWithStatus200IsAFailure() {
+        LastFmException e = assertThrows(LastFmException.class,
+            () -> LastFmClient.parseFirstTrack(reader("{\"message\":\"Rate Limit Exceeded\",\"error\":29}")));
+        assertEquals(200, e.getHttpStatus());
+        assertEquals(LastFmException.RATE_LIMIT_EXCEEDED, e.getErrorCode());
+        assertTrue(e.isRateLimited());
+        assertEquals("Rate Limit Exceeded", e.getMessage());
+    }
+
+    @Test
+    void trackInfoErrorWithStatus200IsAFailure() {
+        LastFmException e = assertThrows(LastFmException.class,
+            () -> LastFmClient.parseTrackInfo(reader("{\"error\":6,\"message\":\"Track not found\",\"links\":[]}")));
+        assertEquals(LastFmException.INVALID_PARAMETERS, e.getErrorCode());
+        assertFalse(e.isRateLimited());
+    }
+
+    @Test
+    void rejectedKeyInA200ReplyIsQuarantined() {
+        ApiKeyPool keys = new ApiKeyPool(5d);
+        keys.setPrimary("0123456789abcdef");
+        LastFmException e = assertThrows(LastFmException.class,
+            () -> LastFmClient.parseFirstTrack(reader("{\"error\":10,\"message\":\"Invalid API key\"}")));
+        keys.failed("0123456789abcdef", e);
+        assertFalse(keys.isAvailable("0123456789abcdef"));
+    }
+
+    @Test
+    void firstTrackOfAnArray() throws IOException {
+        LastFmClient.RecentTrack track = LastFmClient.parseFirstTrack(reader(
+            "{\"recenttracks\":{\"@attr\":{\"user\":\"u\"},\"track\":["
+                + "{\"name\":\"One More Time\",\"artist\":{\"#text\":\"Daft Punk\"},\"@attr\":{\"nowplaying\":\"true\"}},"
+                + "{\"name\":\"Older\",\"artist\":{\"#text\":\"Someone\"}}]}}"));
+        assertEquals("One More Time", track.title());
+        assertEquals("Daft Punk", track.artist());
+        assertTrue(track.nowPlaying());
+    }
+
+    @Test
+    void singleTrackIsABareObject() throws IOException {
+        LastFmClient.RecentTrack track = LastFmClient.parseFirstTrack(reader(
+            "{\"recenttracks\":{\"track\":{\"name\":\"Solo\",\"artist\":{\"#text\":\"A\"},\"date\":{\"uts\":\"1700000000\"}}}}"));
+        assertEquals("Solo", track.title());
+        assertFalse(track.nowPlaying());
+    }
+
+    @Test
+    void noTracksIsNull() throws IOException {
+        assertNull(LastFmClient.parseFirstTrack(reader("{\"recenttracks\":{\"track\":[]}}")));
+        assertNull(LastFmClient.parseFirstTrack(reader("{}")));
+    }
+
+    @Test
+    void trackInfo() throws IOException {
+        TrackMetadata meta = LastFmClient.parseTrackInfo(reader(
+            "{\"track\":{\"duration\":\"320000\",\"playcount\":\"42\",\"album\":{\"title\":\"Discovery\","
+                + "\"image\":[{\"#text\":\"http://s/small.png\",\"size\":\"small\"},"
+                + "{\"#text\":\"http://s/large.png\",\"size\":\"extralarge\"}]}}}"));
+        assertEquals("Discovery", meta.album());
+        assertEquals(320_000L, meta.durationMillis());
+        assertEquals(42L, meta.playCount());
+        assertEquals("http://s/large.png", meta.artworkUrl());
+    }
+
+    @Test
+    void scrobbleSignatureSkipsFormat() {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("method", "track.scrobble");
+        params.put("format", "json");
+        params.put("api_key", "k");
+        assertEquals(LastFmClient.sign(Map.of("api_key", "k", "method", "track.scrobble"), "secret"),
+            LastFmClient.sign(params, "secret"));
+    }
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(new StringReader(json));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogFileBackendTest {
+    private static final UUID ALICE = new UUID(1L, 1L);
+    private static final UUID BOB = new UUID(2L, 2L);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void latestRecordWinsAcrossReopen() throws IOException {
+        Path file = dir.resolve("players.log");
+        try (LogFileBackend log = new LogFileBackend(file)) {
+            log.write(Map.of(ALICE, settings("lastfm_username", "first")));
+            log.write(Map.of(ALICE, settings("lastfm_username", "second"), BOB, settings("notify", "false")));
+        }
+        try (LogFileBackend log = new LogFileBackend(file)) {
+            assertEquals("second", log.read(ALICE).get("lastfm_username"));
+            assertEquals("false", log.read(BOB).get("notify"));
+            assertEquals(PlayerSettings.EMPTY, log.read(new UUID(3L, 3L)));
+        }
+    }
+
+    @Test
+    void tornTailIsCutOffAndLaterWritesSurvive() throws IOException {
+        Path file = dir.resolve("players.log");
+        try (LogFileBackend log = new LogFileBackend(file)) {
+            log.write(Map.of(ALICE, settings("lastfm_username", "alice")));
+        }
+        long intact = Files.size(file);
+        // Half a record: a header promising more payload than follows
+        Files.write(file, new byte[] {0, 0, 0, 64, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+
+        try (LogFileBackend log = new LogFileBackend(file)) {
+            assertEquals(intact, Files.size(file));
+            assertEquals("alice", log.read(ALICE).get("lastfm_username"));
+            log.write(Map.of(BOB, settings("lastfm_username", "bob")));
+        }
+        try (LogFileBackend log = new LogFileBackend(file)) {
+            assertEquals("alice", log.read(ALICE).get("lastfm_username"));
+            assertEquals("bob", log.read(BOB).get("lastfm_username"));
+        }
+    }
+
+    @Test
+    void corruptRecordEndsTheLog() throws IOException {
+        Path file = dir.resolve("players.log");
+        try (LogFileBackend log = new LogFileBackend(file)) {
+            log.write(Map.of(ALICE, settings("lastfm_username", "alice")));
+        }
+        long first = Files.size(file);
+        try (LogFileBackend log = new LogFileBackend(file)) {
+            log.write(Map.of(BOB, settings("lastfm_username", "bob")));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x55;
+        Files.write(file, bytes);
+
+        try (LogFileBackend log = new LogFileBackend(file)) {
+            assertEquals(first, Files.size(file));
+            assertEquals("alice", log.read(ALICE).get("lastfm_username"));
+            assertEquals(PlayerSettings.EMPTY, log.read(BOB));
+        }
+    }
+
+    private static PlayerSettings settings(String key, String value) {
+        Properties p = new Properties();
+        p.setProperty(key, value);
+        return PlayerSettings.of(p);
+    }
+}
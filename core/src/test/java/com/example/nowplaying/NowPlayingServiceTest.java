@@ -0,0 +1,36 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NowPlayingServiceTest {
+    @Test
+    void versionMovesOnlyWhenTheTrackChanges() {
+        UUID key = UUID.randomUUID();
+        NowPlayingService.update(key, "One More Time", "Daft Punk", "web");
+        long first = NowPlayingService.get(key).version();
+        assertTrue(first > 0);
+        NowPlayingService.update(key, " One More Time ", "Daft Punk", "web");
+        assertEquals(first, NowPlayingService.get(key).version());
+        NowPlayingService.update(key, "Aerodynamic", "Daft Punk", "web");
+        assertTrue(NowPlayingService.get(key).version() > first);
+        NowPlayingService.clear(key);
+    }
+
+    @Test
+    void blankUpdateClearsTheKey() {
+        UUID key = UUID.randomUUID();
+        NowPlayingService.update(key, "One More Time", "Daft Punk", "web");
+        NowPlayingService.update(key, " ", null, "web");
+        assertSame(NowPlayingService.Snapshot.EMPTY, NowPlayingService.get(key));
+        assertEquals(0L, NowPlayingService.get(key).version());
+
+        NowPlayingService.update(key, "", "", "web");
+        assertSame(NowPlayingService.Snapshot.EMPTY, NowPlayingService.get(key));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NowPlayingStreamsTest {
+    @Test
+    void streamFrameKeepsEveryLineInsideTheEvent() {
+        NowPlayingService.Snapshot s = new NowPlayingService.Snapshot("a\r\nb", "c\nd", "web", Instant.EPOCH, 7L,
+            TrackMetadata.NONE);
+        String frame = new String(NowPlayingStreams.frame(s), StandardCharsets.UTF_8);
+        assertTrue(frame.endsWith("\n\n"), frame);
+        String[] lines = frame.substring(0, frame.length() - 2).split("\n", -1);
+        assertEquals("id: 7", lines[0]);
+        assertEquals("event: nowplaying", lines[1]);
+        for (int i = 2; i < lines.length; i++) {
+            assertTrue(lines[i].startsWith("data: "), "line outside the event: " + lines[i]);
+        }
+    }
+
+}
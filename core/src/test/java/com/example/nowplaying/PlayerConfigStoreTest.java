@@ -0,0 +1,50 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlayerConfigStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void updatesDuringABackendSwitchAreNotLost() throws Exception {
+        NowPlayingConfig.setConfigDirProvider(() -> dir);
+        PlayerConfigStore.configure(store("files"));
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < 500; i++) players.add(UUID.randomUUID());
+
+        Thread writer = new Thread(() -> {
+            for (UUID p : players) PlayerConfigStore.setLastfmUsername(p, "user-" + p);
+        });
+        writer.start();
+        PlayerConfigStore.configure(store("log"));
+        writer.join();
+        PlayerConfigStore.flush();
+
+        // Everything ends up in one of the two backends, the later writes in the log
+        try (LogFileBackend log = new LogFileBackend(NowPlayingConfig.dataDir().resolve("players.log"))) {
+            PropertiesFileBackend files = new PropertiesFileBackend(NowPlayingConfig.dataDir().resolve("players"));
+            for (UUID p : players) {
+                String saved = log.read(p).get("lastfm_username");
+                if (saved == null) saved = files.read(p).get("lastfm_username");
+                assertEquals("user-" + p, saved, "lost the update of " + p);
+                assertEquals("user-" + p, PlayerConfigStore.getLastfmUsername(p, null));
+            }
+        }
+        PlayerConfigStore.configure(store("files"));
+    }
+
+    private static NowPlayingConfig store(String type) {
+        NowPlayingConfig cfg = new NowPlayingConfig();
+        cfg.setPlayerStore(type);
+        return cfg;
+    }
+}
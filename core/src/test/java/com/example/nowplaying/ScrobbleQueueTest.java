@@ -0,0 +1,67 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScrobbleQueueTest {
+    private static final UUID PLAYER = new UUID(1L, 1L);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pendingPlaysSurviveReopen() throws IOException {
+        Path file = dir.resolve("scrobbles.log");
+        try (ScrobbleQueue queue = new ScrobbleQueue(file)) {
+            ScrobbleQueue.Scrobble first = queue.add(PLAYER, 1_000L, "Daft Punk", "One More Time", "Discovery", 320);
+            queue.add(PLAYER, 2_000L, "Justice", "D.A.N.C.E.", "", 0);
+            queue.remove(List.of(first));
+        }
+        try (ScrobbleQueue queue = new ScrobbleQueue(file)) {
+            assertEquals(List.of("D.A.N.C.E."), titles(queue));
+        }
+    }
+
+    @Test
+    void tornTailIsCutOffAndLaterPlaysSurvive() throws IOException {
+        Path file = dir.resolve("scrobbles.log");
+        try (ScrobbleQueue queue = new ScrobbleQueue(file)) {
+            queue.add(PLAYER, 1_000L, "Daft Punk", "One More Time", "", 0);
+        }
+        long intact = Files.size(file);
+        Files.write(file, new byte[] {0, 0, 0, 90, 9, 9, 9, 9, 1}, StandardOpenOption.APPEND);
+
+        try (ScrobbleQueue queue = new ScrobbleQueue(file)) {
+            assertEquals(intact, Files.size(file));
+            queue.add(PLAYER, 2_000L, "Justice", "D.A.N.C.E.", "", 0);
+        }
+        try (ScrobbleQueue queue = new ScrobbleQueue(file)) {
+            assertEquals(List.of("One More Time", "D.A.N.C.E."), titles(queue));
+        }
+    }
+
+    @Test
+    void emptiedQueueTruncatesTheJournal() throws IOException {
+        Path file = dir.resolve("scrobbles.log");
+        try (ScrobbleQueue queue = new ScrobbleQueue(file)) {
+            queue.remove(List.of(queue.add(PLAYER, 1_000L, "A", "B", "", 0)));
+            assertEquals(0L, Files.size(file));
+            // Ids keep counting up, so a DONE for an old id can never hit a new play
+            ScrobbleQueue.Scrobble next = queue.add(PLAYER, 2_000L, "A", "C", "", 0);
+            assertEquals(1L, next.id());
+        }
+    }
+
+    private static List<String> titles(ScrobbleQueue queue) {
+        return queue.pending().stream().map(ScrobbleQueue.Scrobble::title).toList();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.nowplaying;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    @Test
+    void runsTimersInDeadlineOrderAcrossLevels() throws InterruptedException {
+        List<String> ran = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        // 8 slots of 5 ms: 300 ms lies two levels up and has to cascade down
+        try (TimingWheel wheel = new TimingWheel(5L, 8, Runnable::run, "test-wheel")) {
+            wheel.schedule(() -> { ran.add("late"); done.countDown(); }, 300, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> { ran.add("early"); done.countDown(); }, 10, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> { ran.add("middle"); done.countDown(); }, 80, TimeUnit.MILLISECONDS);
+            assertEquals(3, wheel.size());
+            assertTrue(done.await(5, TimeUnit.SECONDS), "timers did not run: " + ran);
+            assertEquals(List.of("early", "middle", "late"), ran);
+            assertEquals(0, wheel.size());
+        }
+    }
+
+    @Test
+    void neverRunsBeforeItsDeadline() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long[] ranAfter = new long[1];
+        long start = System.nanoTime();
+        try (TimingWheel wheel = new TimingWheel(10L, 16, Runnable::run, "test-wheel")) {
+            wheel.schedule(() -> {
+                ranAfter[0] = System.nanoTime() - start;
+                done.countDown();
+            }, 120, TimeUnit.MILLISECONDS);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        assertTrue(ranAfter[0] >= TimeUnit.MILLISECONDS.toNanos(120), "ran after " + ranAfter[0] + " ns");
+    }
+
+    @Test
+    void cancelledTimersDoNotRun() throws InterruptedException {
+        List<String> ran = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try (TimingWheel wheel = new TimingWheel(5L, 8, Runnable::run, "test-wheel")) {
+            TimingWheel.Timeout cancelled = wheel.schedule(() -> ran.add("cancelled"), 20, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> { ran.add("kept"); done.countDown(); }, 60, TimeUnit.MILLISECONDS);
+            assertTrue(cancelled.cancel());
+            assertFalse(cancelled.cancel());
+            assertTrue(cancelled.isCancelled());
+            assertEquals(1, wheel.size());
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("kept"), ran);
+        }
+    }
+
+    @Test
+    void closedWheelRejectsNewTimers() {
+        TimingWheel wheel = new TimingWheel(5L, 8, Runnable::run, "test-wheel");
+        wheel.close();
+        assertThrows(RejectedExecutionException.class, () -> wheel.schedule(() -> {}, 1, TimeUnit.MILLISECONDS));
+    }
+}
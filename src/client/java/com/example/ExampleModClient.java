@@ -3,25 +3,23 @@ package com.example;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 
-import com.example.nowplaying.NowPlayingHttpServer;
+import com.example.nowplaying.NowPlayingEngine;
 import com.example.nowplaying.NowPlayingService;
 import com.example.nowplaying.LastFmPoller;
-import com.example.nowplaying.NowPlayingConfig;
+import com.example.nowplaying.ConfigManager;
 
 public class ExampleModClient implements ClientModInitializer {
 	@Override
 	public void onInitializeClient() {
-		// Start local endpoint and Last.fm poller client-side as fallback
-		try { NowPlayingHttpServer.startIfNotRunning(18080); } catch (Exception ignored) {}
-		NowPlayingConfig cfg = NowPlayingConfig.load();
-		String apiKey = System.getenv("LASTFM_API_KEY");
-		if (apiKey == null || apiKey.isBlank()) apiKey = System.getProperty("lastfm_api_key", cfg.getLastfmApiKey());
-		String username = System.getProperty("lastfm_username", cfg.getLastfmUsername());
-		LastFmPoller.start(apiKey, username, java.time.Duration.ofSeconds(10));
+		// Start local endpoint and Last.fm poller client-side as fallback; this returns at once and the
+		// integrated server reuses the same engine
+		NowPlayingEngine.start();
+		ClientLifecycleEvents.CLIENT_STOPPING.register(client -> NowPlayingEngine.flush());
 
 		// Client-side command when connected to unmodded public servers
 		ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) -> {
@@ -72,9 +70,7 @@ public class ExampleModClient implements ClientModInitializer {
 
 	private int executeClientSetUsername(String username) {
 		var client = MinecraftClient.getInstance();
-		NowPlayingConfig cfg = NowPlayingConfig.load();
-		cfg.setLastfmUsername(username);
-		cfg.save();
+		ConfigManager.update(cfg -> cfg.setLastfmUsername(username));
 		LastFmPoller.updateUsername(username);
 		if (client.player != null) {
 			client.player.sendMessage(Text.literal("Твой Last.fm ник обновлён: " + username).formatted(Formatting.RED), false);
@@ -84,9 +80,7 @@ public class ExampleModClient implements ClientModInitializer {
 
 	private int executeClientSetApi(String key) {
 		var client = MinecraftClient.getInstance();
-		NowPlayingConfig cfg = NowPlayingConfig.load();
-		cfg.setLastfmApiKey(key);
-		cfg.save();
+		ConfigManager.update(cfg -> cfg.setLastfmApiKey(key));
 		LastFmPoller.updateApiKey(key);
 		if (client.player != null) {
 			client.player.sendMessage(Text.literal("Last.fm API ключ сохранён.").formatted(Formatting.RED), false);
@@ -0,0 +1,78 @@
+package com.example;
+
+import com.example.nowplaying.BroadcastQueue;
+import com.example.nowplaying.NowPlayingService;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Posts {@link BroadcastQueue} announcements to server chat. A tick with something pending hands one drain to a
+ * worker thread, which applies the limits and builds each message once; only the final broadcast to all players
+ * runs on the server thread.
+ */
+final class ChatBroadcaster {
+	// Online player names, so the worker never touches the player list
+	private static final Map<UUID, String> NAMES = new ConcurrentHashMap<>();
+	private static final AtomicBoolean DRAINING = new AtomicBoolean();
+	private static ExecutorService worker;
+
+	private ChatBroadcaster() {}
+
+	static void register() {
+		ServerPlayConnectionEvents.JOIN.register((handler, sender, server) ->
+			NAMES.put(handler.getPlayer().getUuid(), handler.getPlayer().getName().getString()));
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> NAMES.remove(handler.getPlayer().getUuid()));
+		ServerTickEvents.END_SERVER_TICK.register(ChatBroadcaster::onTick);
+	}
+
+	private static void onTick(MinecraftServer server) {
+		if (!BroadcastQueue.hasPending() || !DRAINING.compareAndSet(false, true)) return;
+		worker().execute(() -> {
+			try {
+				List<Text> messages = new ArrayList<>();
+				for (BroadcastQueue.Announcement a : BroadcastQueue.drain()) {
+					// Updates for players who are not online (e.g. a browser still posting) are not announced
+					String name = NAMES.get(a.player());
+					if (name != null) messages.add(format(name, a));
+				}
+				if (!messages.isEmpty()) {
+					server.execute(() -> messages.forEach(m -> server.getPlayerManager().broadcast(m, false)));
+				}
+			} finally {
+				DRAINING.set(false);
+			}
+		});
+	}
+
+	// The configured now_playing_format, after the player's name
+	private static Text format(String name, BroadcastQueue.Announcement a) {
+		return Text.empty()
+			.append(Text.literal("♪ ").formatted(Formatting.LIGHT_PURPLE))
+			.append(Text.literal(name).formatted(Formatting.AQUA))
+			.append(Text.literal(": ").formatted(Formatting.GRAY))
+			.append(Text.literal(NowPlayingService.format(a.player(), a.snapshot())).formatted(Formatting.WHITE));
+	}
+
+	private static synchronized ExecutorService worker() {
+		if (worker == null) {
+			worker = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "nowplaying-broadcast");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return worker;
+	}
+}
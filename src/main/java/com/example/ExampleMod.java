@@ -9,12 +9,22 @@ import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 
-import com.example.nowplaying.NowPlayingHttpServer;
+import com.example.nowplaying.BroadcastQueue;
+import com.example.nowplaying.ConfigManager;
+import com.example.nowplaying.NowPlayingEngine;
 import com.example.nowplaying.NowPlayingService;
 import com.example.nowplaying.LastFmPoller;
+import com.example.nowplaying.ListeningHistory;
 import com.example.nowplaying.NowPlayingConfig;
 import com.example.nowplaying.PlayerConfigStore;
+import com.example.nowplaying.Scrobbler;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,19 +45,28 @@ public class ExampleMod implements ModInitializer {
 
 		LOGGER.info("Hello Fabric world!");
 
-		// Defer starting services to server start to ensure server-side state
-		ServerLifecycleEvents.SERVER_STARTING.register(server -> {
-			try {
-				NowPlayingHttpServer.startIfNotRunning(18080);
-				LOGGER.info("NowPlaying HTTP server started on http://127.0.0.1:18080");
-			} catch (Exception e) {
-				LOGGER.error("Failed to start NowPlaying HTTP server", e);
-			}
-			NowPlayingConfig cfg = NowPlayingConfig.load();
-			String apiKey = System.getenv("LASTFM_API_KEY");
-			if (apiKey == null || apiKey.isBlank()) apiKey = System.getProperty("lastfm_api_key", cfg.getLastfmApiKey());
-			String username = System.getProperty("lastfm_username", cfg.getLastfmUsername());
-			LastFmPoller.start(apiKey, username, java.time.Duration.ofSeconds(10));
+		// The engine is plain Java; it only needs to know where the game keeps its config.
+		// Main entrypoints run before client ones, so this also covers ExampleModClient.
+		NowPlayingConfig.setConfigDirProvider(FabricLoader.getInstance()::getConfigDir);
+
+		// Starts in the background; on an integrated server this joins the engine the client already started
+		ServerLifecycleEvents.SERVER_STARTING.register(server ->
+			NowPlayingEngine.start().thenAccept(BroadcastQueue::configure));
+		ChatBroadcaster.register();
+
+		// Player settings and track metadata are written behind; persist whatever is still pending
+		ServerLifecycleEvents.SERVER_STOPPING.register(server -> NowPlayingEngine.flush());
+
+		// One Last.fm subscription per online player that has configured a username
+		ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+			var uuid = handler.getPlayer().getUuid();
+			LastFmPoller.subscribe(uuid, PlayerConfigStore.getLastfmUsername(uuid, ""));
+		});
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+			var uuid = handler.getPlayer().getUuid();
+			LastFmPoller.unsubscribe(uuid);
+			NowPlayingService.clear(uuid);
+			NowPlayingTexts.forget(uuid);
 		});
 
 		// Register /nowplay command
@@ -57,6 +76,15 @@ public class ExampleMod implements ModInitializer {
 				.requires(src -> true)
 				.executes(this::executeNowPlay)
 				.then(CommandManager.literal("g").executes(this::executeNowPlayGlobal))
+				.then(CommandManager.literal("history").executes(this::executeHistory))
+				.then(CommandManager.literal("top")
+					.executes(ctx -> executeTopArtists(ctx, false))
+					.then(CommandManager.literal("server").executes(ctx -> executeTopArtists(ctx, true)))
+				)
+				.then(CommandManager.literal("broadcast")
+					.then(CommandManager.literal("on").executes(ctx -> executeSetBroadcast(ctx, true)))
+					.then(CommandManager.literal("off").executes(ctx -> executeSetBroadcast(ctx, false)))
+				)
 				.then(CommandManager.literal("lastfm")
 					.then(CommandManager.argument("username", com.mojang.brigadier.arguments.StringArgumentType.string())
 						// allow any player to set local username
@@ -69,6 +97,17 @@ public class ExampleMod implements ModInitializer {
 							.executes(this::executeSetLastfmApiKey)
 						)
 					)
+					.then(CommandManager.literal("keys")
+						// key usage is for admins sizing the key pool
+						.requires(src -> src.hasPermissionLevel(2))
+						.executes(this::executeApiKeyUsage)
+					)
+					.then(CommandManager.literal("session")
+						.then(CommandManager.argument("key", com.mojang.brigadier.arguments.StringArgumentType.string())
+							.requires(src -> true)
+							.executes(this::executeSetLastfmSessionKey)
+						)
+					)
 				);
 			dispatcher.register(nowplay);
 			dispatcher.register(CommandManager.literal("np").redirect(nowplay.build()));
@@ -77,41 +116,113 @@ public class ExampleMod implements ModInitializer {
 	}
 
 	private int executeNowPlay(CommandContext<ServerCommandSource> context) {
-		String message = NowPlayingService.getFormattedNowPlaying();
-		if (message.isEmpty()) {
+		UUID key = nowPlayingKeyFor(context.getSource());
+		if (NowPlayingService.get(key).isEmpty()) {
 			context.getSource().sendFeedback(() -> Text.literal("Ничего не играет."), false);
 			return Command.SINGLE_SUCCESS;
 		}
-		// Send only to command executor
-		context.getSource().sendFeedback(() -> Text.literal(message), false);
+		// Send only to command executor; the component is cached until the track changes
+		Text message = NowPlayingTexts.of(key);
+		context.getSource().sendFeedback(() -> message, false);
 		return Command.SINGLE_SUCCESS;
 	}
 
 	private int executeNowPlayGlobal(CommandContext<ServerCommandSource> context) {
-		String message = NowPlayingService.getFormattedNowPlaying();
-		if (message.isEmpty()) {
+		UUID key = nowPlayingKeyFor(context.getSource());
+		NowPlayingService.Snapshot snapshot = NowPlayingService.get(key);
+		if (snapshot.isEmpty()) {
 			context.getSource().sendFeedback(() -> Text.literal("Ничего не играет."), false);
 			return Command.SINGLE_SUCCESS;
 		}
-		// Send only to command executor
-		context.getSource().sendFeedback(() -> Text.literal("!" + message), false);
+		var player = context.getSource().getPlayer();
+		if (player == null) {
+			// Console: send only to command executor
+			context.getSource().sendFeedback(() -> Text.literal("!" + NowPlayingService.getFormattedNowPlaying(key)), false);
+			return Command.SINGLE_SUCCESS;
+		}
+		// Goes out with the next broadcast batch, within the chat rate limits
+		BroadcastQueue.announce(player.getUuid(), snapshot);
+		context.getSource().sendFeedback(() -> Text.literal("Трек будет объявлен в чате."), false);
 		return Command.SINGLE_SUCCESS;
 	}
 
+	private int executeSetBroadcast(CommandContext<ServerCommandSource> context, boolean enabled) {
+		var player = context.getSource().getPlayer();
+		if (player == null) {
+			context.getSource().sendFeedback(() -> Text.literal("Только для игроков."), false);
+			return Command.SINGLE_SUCCESS;
+		}
+		PlayerConfigStore.setBroadcastEnabled(player.getUuid(), enabled);
+		player.sendMessage(Text.literal(enabled
+			? "Твои треки будут объявляться в чате."
+			: "Твои треки больше не объявляются в чате.").formatted(Formatting.RED), false);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private int executeHistory(CommandContext<ServerCommandSource> context) {
+		List<ListeningHistory.Play> plays = ListeningHistory.recent(historyKeyFor(context.getSource()), 10);
+		if (plays.isEmpty()) {
+			context.getSource().sendFeedback(() -> Text.literal("История пуста."), false);
+			return Command.SINGLE_SUCCESS;
+		}
+		StringBuilder sb = new StringBuilder("Последние треки:");
+		for (ListeningHistory.Play play : plays) {
+			sb.append("\n- ").append(play.artist().isEmpty() ? play.title() : play.artist() + " — " + play.title());
+		}
+		context.getSource().sendFeedback(() -> Text.literal(sb.toString()), false);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private int executeTopArtists(CommandContext<ServerCommandSource> context, boolean server) {
+		List<ListeningHistory.ArtistCount> top =
+			ListeningHistory.topArtists(server ? null : historyKeyFor(context.getSource()), 5);
+		if (top.isEmpty()) {
+			context.getSource().sendFeedback(() -> Text.literal("На этой неделе ничего не играло."), false);
+			return Command.SINGLE_SUCCESS;
+		}
+		StringBuilder sb = new StringBuilder(server ? "Топ исполнителей сервера за неделю:" : "Твой топ исполнителей за неделю:");
+		for (int i = 0; i < top.size(); i++) {
+			ListeningHistory.ArtistCount a = top.get(i);
+			String artist = a.artist().isEmpty() ? "(без исполнителя)" : a.artist();
+			sb.append("\n").append(i + 1).append(". ").append(artist).append(" — ").append(a.plays());
+		}
+		context.getSource().sendFeedback(() -> Text.literal(sb.toString()), false);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	// Like nowPlayingKeyFor, but by recorded history rather than by what is playing right now
+	private static UUID historyKeyFor(ServerCommandSource source) {
+		var player = source.getPlayer();
+		if (player == null) return NowPlayingService.LOCAL;
+		if (ListeningHistory.recent(player.getUuid(), 1).isEmpty() && !source.getServer().isDedicated()) {
+			return NowPlayingService.LOCAL;
+		}
+		return player.getUuid();
+	}
+
+	private static UUID nowPlayingKeyFor(ServerCommandSource source) {
+		var player = source.getPlayer();
+		if (player == null) return NowPlayingService.LOCAL;
+		// In singleplayer / LAN the host's browser and client poller write the local state
+		if (NowPlayingService.get(player.getUuid()).isEmpty() && !source.getServer().isDedicated()) {
+			return NowPlayingService.LOCAL;
+		}
+		return player.getUuid();
+	}
+
 	private int executeSetLastfmUsername(CommandContext<ServerCommandSource> context) {
 		String username = com.mojang.brigadier.arguments.StringArgumentType.getString(context, "username");
 		var player = context.getSource().getPlayer();
 		if (player != null) {
 			// Per-player config
 			PlayerConfigStore.setLastfmUsername(player.getUuid(), username);
-			// Make poller read this player's username when they execute the command
-			LastFmPoller.updateUsername(username);
+			// Retarget this player's own poll entry
+			LastFmPoller.subscribe(player.getUuid(), username);
 			player.sendMessage(Text.literal("Твой Last.fm ник обновлён: " + username).formatted(Formatting.RED), false);
 		} else {
 			// Console: write to global config
-			NowPlayingConfig cfg = NowPlayingConfig.load();
-			cfg.setLastfmUsername(username);
-			cfg.save();
+			ConfigManager.update(cfg -> cfg.setLastfmUsername(username));
+			LastFmPoller.updateUsername(username);
 			context.getSource().sendFeedback(() -> Text.literal("Глобальный Last.fm ник обновлён: " + username), false);
 		}
 		return Command.SINGLE_SUCCESS;
@@ -119,16 +230,53 @@ public class ExampleMod implements ModInitializer {
 
 	private int executeSetLastfmApiKey(CommandContext<ServerCommandSource> context) {
 		String key = com.mojang.brigadier.arguments.StringArgumentType.getString(context, "key");
-		LastFmPoller.updateApiKey(key);
-		NowPlayingConfig cfg = NowPlayingConfig.load();
-		cfg.setLastfmApiKey(key);
-		cfg.save();
 		var p = context.getSource().getPlayer();
 		if (p != null) {
-			p.sendMessage(Text.literal("Last.fm API ключ сохранён.").formatted(Formatting.RED), false);
+			// Per-player key: this player's polls stop drawing on the server's shared keys
+			PlayerConfigStore.setLastfmApiKey(p.getUuid(), key);
+			LastFmPoller.resume(p.getUuid());
+			p.sendMessage(Text.literal(key.isBlank()
+				? "Твой Last.fm API ключ удалён, запросы идут через общие ключи сервера."
+				: "Твой Last.fm API ключ сохранён, твои запросы идут через него.").formatted(Formatting.RED), false);
 		} else {
+			LastFmPoller.updateApiKey(key);
+			ConfigManager.update(cfg -> cfg.setLastfmApiKey(key));
 			context.getSource().sendFeedback(() -> Text.literal("Last.fm API ключ сохранён."), false);
 		}
 		return Command.SINGLE_SUCCESS;
 	}
+
+	private int executeApiKeyUsage(CommandContext<ServerCommandSource> context) {
+		List<LastFmPoller.KeyUsage> keys = LastFmPoller.getKeyUsage();
+		StringBuilder sb = new StringBuilder("Last.fm ключи (лимит ")
+			.append(String.format(Locale.ROOT, "%.1f", LastFmPoller.getRateLimit())).append(" запр./с на ключ):");
+		for (LastFmPoller.KeyUsage k : keys) {
+			sb.append("\n- ").append(k.maskedKey()).append(k.shared() ? "" : " (свой)")
+				.append(": ").append(String.format(Locale.ROOT, "%.2f", k.perSecond())).append(" запр./с, всего ")
+				.append(k.requests());
+			if (k.rateLimited() > 0) sb.append(", лимит превышен ").append(k.rateLimited()).append(" раз");
+			if (k.quarantinedMillis() > 0) sb.append(", на паузе ещё ").append(k.quarantinedMillis() / 1000L).append(" с");
+		}
+		long shared = keys.stream().filter(LastFmPoller.KeyUsage::shared).count();
+		sb.append("\nОбщих ключей: ").append(shared).append(", нужно для текущих игроков: ")
+			.append(LastFmPoller.getKeysNeeded())
+			.append(String.format(Locale.ROOT, " (%.2f запр./с)", LastFmPoller.getSharedDemand()));
+		context.getSource().sendFeedback(() -> Text.literal(sb.toString()), false);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private int executeSetLastfmSessionKey(CommandContext<ServerCommandSource> context) {
+		String key = com.mojang.brigadier.arguments.StringArgumentType.getString(context, "key");
+		var player = context.getSource().getPlayer();
+		if (player != null) {
+			// Per-player session: scrobbles the tracks this player sends from the browser
+			Scrobbler.updateSessionKey(player.getUuid(), key);
+			player.sendMessage(Text.literal("Last.fm сессия сохранена, треки будут скробблиться.").formatted(Formatting.RED), false);
+		} else {
+			ConfigManager.update(cfg -> cfg.setLastfmSessionKey(key));
+			Scrobbler.updateSessionKey(NowPlayingService.LOCAL, key);
+			context.getSource().sendFeedback(() -> Text.literal("Глобальная Last.fm сессия сохранена."), false);
+		}
+		return Command.SINGLE_SUCCESS;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.example;
+
+import com.example.nowplaying.NowPlayingService;
+import net.minecraft.text.Text;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chat components for now-playing messages. {@link NowPlayingService#getFormattedNowPlaying(UUID)} hands out the
+ * same String until the state or template changes, so the component wrapping it is built once and reused as well.
+ */
+public final class NowPlayingTexts {
+	private static final Map<UUID, Cached> CACHE = new ConcurrentHashMap<>();
+
+	private NowPlayingTexts() {}
+
+	/** The message for {@code key} as a component; empty when nothing is playing. */
+	public static Text of(UUID key) {
+		String message = NowPlayingService.getFormattedNowPlaying(key);
+		if (message.isEmpty()) return Text.empty();
+		Cached cached = CACHE.get(key);
+		if (cached != null && cached.message() == message) return cached.text();
+		Text text = Text.literal(message);
+		CACHE.put(key, new Cached(message, text));
+		return text;
+	}
+
+	public static void forget(UUID key) {
+		CACHE.remove(key);
+	}
+
+	private record Cached(String message, Text text) {}
+}